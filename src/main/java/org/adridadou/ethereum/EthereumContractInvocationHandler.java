@@ -79,6 +79,13 @@ public class EthereumContractInvocationHandler implements InvocationHandler {
         return convertSpecificType(result, method.getReturnType());
     }
 
+    <T> T convertEvent(Object[] values, Class<T> eventType) {
+        if (values.length == 1) {
+            return (T) convertResult(values[0], eventType, eventType);
+        }
+        return (T) convertSpecificType(values, eventType);
+    }
+
     private Object convertSpecificType(Object[] result, Class<?> returnType) {
         Object[] params = new Object[result.length];
 
@@ -113,6 +120,20 @@ public class EthereumContractInvocationHandler implements InvocationHandler {
         throw new IllegalArgumentException("no constructor with arguments found! for type " + returnType.getSimpleName());
     }
 
+    EthAddress getAddress(Object proxy) {
+        return getInfo(proxy).getAddress();
+    }
+
+    List<CallTransaction.Function> getFunctions(Object proxy) {
+        SmartContractInfo contractInfo = getInfo(proxy);
+        return contracts.get(contractInfo.getAddress()).get(contractInfo.getSender()).getFunctions();
+    }
+
+    private SmartContractInfo getInfo(Object proxy) {
+        return Optional.ofNullable(info.get(new ProxyWrapper(proxy)))
+                .orElseThrow(() -> new EthereumApiException("the object is not a registered contract proxy"));
+    }
+
     <T> void register(T proxy, Class<T> contractInterface, SoliditySource code, String contractName, EthAddress address, EthAccount sender) throws IOException {
         final Map<String, CompilationResult.ContractMetadata> contractsFound = compile(code.getSource()).contracts;
         CompilationResult.ContractMetadata found = null;
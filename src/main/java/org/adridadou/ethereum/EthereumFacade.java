@@ -4,8 +4,10 @@ import static java.lang.reflect.Proxy.newProxyInstance;
 
 import java.io.IOException;
 import java.nio.charset.Charset;
+import java.util.Arrays;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import com.google.common.base.Charsets;
 import org.adridadou.ethereum.blockchain.BlockchainProxy;
@@ -13,8 +15,18 @@ import org.adridadou.ethereum.converters.input.InputTypeConverter;
 import org.adridadou.ethereum.converters.input.InputTypeHandler;
 import org.adridadou.ethereum.converters.output.OutputTypeConverter;
 import org.adridadou.ethereum.converters.output.OutputTypeHandler;
+import org.adridadou.ethereum.handler.BlockConfirmation;
+import org.adridadou.ethereum.handler.BlockReplay;
+import org.adridadou.ethereum.handler.CheckpointStore;
+import org.adridadou.ethereum.handler.ConfirmedBlocks;
+import org.adridadou.ethereum.handler.ContractEventRouter;
 import org.adridadou.ethereum.handler.EthereumEventHandler;
+import org.adridadou.ethereum.handler.OnBlockParameters;
+import org.adridadou.ethereum.handler.PendingTransactionTracker;
+import org.adridadou.ethereum.smartcontract.ConstantCallCache;
 import org.adridadou.ethereum.values.*;
+import org.ethereum.core.CallTransaction;
+import rx.Observable;
 
 /**
  * Created by davidroon on 31.03.16.
@@ -26,6 +38,7 @@ public class EthereumFacade {
     private final OutputTypeHandler outputTypeHandler;
     private final InputTypeHandler inputTypeHandler;
     private final BlockchainProxy blockchainProxy;
+    private ContractEventRouter eventRouter;
 
     public EthereumFacade(BlockchainProxy blockchainProxy) {
         inputTypeHandler = new InputTypeHandler();
@@ -44,6 +57,11 @@ public class EthereumFacade {
         return this;
     }
 
+    public EthereumFacade enableConstantCallCache(final int maxEntries, final long maxBytes) {
+        blockchainProxy.setConstantCallCache(new ConstantCallCache(maxEntries, maxBytes));
+        return this;
+    }
+
     public <T> T createContractProxy(SoliditySource code, String contractName, EthAddress address, EthAccount sender, Class<T> contractInterface) throws IOException {
         T proxy = (T) newProxyInstance(contractInterface.getClassLoader(), new Class[]{contractInterface}, handler);
         handler.register(proxy, contractInterface, code, contractName, address, sender);
@@ -72,10 +90,124 @@ public class EthereumFacade {
         return blockchainProxy.getBalance(account.getAddress());
     }
 
+    public <T> T callOnSnapshot(Supplier<T> calls) {
+        return blockchainProxy.callOnSnapshot(calls);
+    }
+
+    public <T> T callAtBlock(long blockNumber, Supplier<T> calls) {
+        return blockchainProxy.callAtBlock(blockNumber, calls);
+    }
+
+    public <T> List<T> callInParallel(List<Supplier<T>> calls) {
+        return blockchainProxy.callInParallel(calls);
+    }
+
+    public EthereumFacade enableMulticall(final EthAddress aggregator) {
+        blockchainProxy.enableMulticall(aggregator);
+        return this;
+    }
+
+    public EthereumFacade enableMulticall(final EthAccount deployer) {
+        blockchainProxy.enableMulticall(deployer);
+        return this;
+    }
+
+    /**
+     * Same as {@link #callInParallel(List)}, but with multicall enabled the constant calls are sent as one eth_call.
+     * The targets then see the aggregator contract as msg.sender instead of the account of the proxy, functions that
+     * depend on msg.sender have to be called through {@link #callInParallel(List)} or on their own.
+     * Each supplier runs on a thread of its own until the round is answered, so a list of n calls holds up to
+     * min(n, 200) threads at once; rounds are sent one after the other for longer lists.
+     */
+    public <T> List<T> callAggregated(List<Supplier<T>> calls) {
+        return blockchainProxy.callAggregated(calls);
+    }
+
     public EthereumEventHandler events() {
         return blockchainProxy.events();
     }
 
+    /**
+     * Decoded events of a contract proxy. With several values the event class needs a constructor taking them in
+     * the order of the event inputs, a single value can be any type the output converters handle.
+     */
+    public <E> Observable<E> observeEvents(Object contract, String eventName, Class<E> eventClass) {
+        return observeEvents(handler.getFunctions(contract), handler.getAddress(contract), eventName, eventClass);
+    }
+
+    public <E> Observable<E> observeEvents(ContractAbi abi, EthAddress address, String eventName, Class<E> eventClass) {
+        return observeEvents(Arrays.asList(new CallTransaction.Contract(abi.getAbi()).functions), address, eventName, eventClass);
+    }
+
+    /**
+     * The blocks from fromBlock on, the past ones first and then the live ones, each once and in order.
+     */
+    public Observable<OnBlockParameters> observeBlocks(long fromBlock) {
+        return new BlockReplay(blockchainProxy::getBlockWithReceipts, events()).from(fromBlock);
+    }
+
+    public CompletableFuture<Long> waitForBlock(long blockNumber) {
+        return events().getChainHead().waitFor(blockNumber);
+    }
+
+    /**
+     * The tracker follows the events until it is closed.
+     */
+    public PendingTransactionTracker trackPendingTransactions(int maxTransactions, int confirmations) {
+        return new PendingTransactionTracker(events(), maxTransactions, confirmations);
+    }
+
+    /**
+     * The blocks once they are confirmations deep, with retractions for confirmed blocks that a reorg of up to 64
+     * more blocks removes.
+     */
+    public Observable<BlockConfirmation> observeConfirmedBlocks(int confirmations) {
+        return observeConfirmedBlocks(confirmations, confirmations + 64);
+    }
+
+    public Observable<BlockConfirmation> observeConfirmedBlocks(int confirmations, int windowSize) {
+        return new ConfirmedBlocks(confirmations, windowSize, blockchainProxy::getBlockWithReceipts, events().getChainHead()).observable();
+    }
+
+    /**
+     * Same as {@link #observeBlocks(long)}, resuming after the last block the consumer processed.
+     */
+    public Observable<OnBlockParameters> observeBlocks(String consumer, CheckpointStore checkpoints, long fromBlock) {
+        return new BlockReplay(blockchainProxy::getBlockWithReceipts, events()).from(consumer, checkpoints, fromBlock);
+    }
+
+    public <E> Observable<E> observeEvents(Object contract, String eventName, Class<E> eventClass, String consumer, CheckpointStore checkpoints, long fromBlock) {
+        return eventRouter().observe(observeBlocks(consumer, checkpoints, fromBlock), handler.getAddress(contract), handler.getFunctions(contract), eventName)
+                .map(values -> handler.convertEvent(values, eventClass));
+    }
+
+    public <E> Observable<E> observeEvents(Object contract, String eventName, Class<E> eventClass, long fromBlock) {
+        return observeEvents(handler.getFunctions(contract), handler.getAddress(contract), eventName, eventClass, fromBlock);
+    }
+
+    public <E> Observable<E> observeEvents(ContractAbi abi, EthAddress address, String eventName, Class<E> eventClass, long fromBlock) {
+        return observeEvents(Arrays.asList(new CallTransaction.Contract(abi.getAbi()).functions), address, eventName, eventClass, fromBlock);
+    }
+
+    private <E> Observable<E> observeEvents(List<CallTransaction.Function> functions, EthAddress address, String eventName, Class<E> eventClass, long fromBlock) {
+        return eventRouter().observe(observeBlocks(fromBlock), address, functions, eventName).map(values -> handler.convertEvent(values, eventClass));
+    }
+
+    private <E> Observable<E> observeEvents(List<CallTransaction.Function> functions, EthAddress address, String eventName, Class<E> eventClass) {
+        return eventRouter().observe(address, functions, eventName).map(values -> handler.convertEvent(values, eventClass));
+    }
+
+    private synchronized ContractEventRouter eventRouter() {
+        if (eventRouter == null) {
+            eventRouter = new ContractEventRouter(events().observeBlocks());
+        }
+        return eventRouter;
+    }
+
+    public void shutdown() {
+        blockchainProxy.shutdown();
+    }
+
     public CompletableFuture<EthExecutionResult> sendEther(EthAccount mainAccount, EthAccount account, EthValue value) {
         return blockchainProxy.sendTx(value, EthData.empty(), mainAccount, account.getAddress());
     }
@@ -1,11 +1,16 @@
 package org.adridadou.ethereum.blockchain;
 
 import org.adridadou.ethereum.handler.EthereumEventHandler;
+import org.adridadou.ethereum.handler.OnBlockParameters;
+import org.adridadou.ethereum.smartcontract.ConstantCallCache;
 import org.adridadou.ethereum.smartcontract.SmartContract;
 import org.adridadou.ethereum.values.*;
 import org.adridadou.exception.EthereumApiException;
 
+import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
 /**
  * Created by davidroon on 08.04.16.
@@ -24,6 +29,47 @@ public interface BlockchainProxy {
 
     EthereumEventHandler events();
 
+    /**
+     * A past block of the main chain with its receipts, as the live block events publish it.
+     */
+    default CompletableFuture<OnBlockParameters> getBlockWithReceipts(long blockNumber) {
+        throw new EthereumApiException("reading past blocks is not supported by " + getClass().getSimpleName());
+    }
+
+    default void setConstantCallCache(ConstantCallCache cache) {
+        throw new EthereumApiException("constant call cache is not supported by " + getClass().getSimpleName());
+    }
+
+    default <T> T callOnSnapshot(Supplier<T> calls) {
+        return calls.get();
+    }
+
+    default <T> T callAtBlock(long blockNumber, Supplier<T> calls) {
+        throw new EthereumApiException("calls at a specific block are not supported by " + getClass().getSimpleName());
+    }
+
+    default <T> List<T> callInParallel(List<Supplier<T>> calls) {
+        return callOnSnapshot(() -> calls.stream().map(Supplier::get).collect(Collectors.toList()));
+    }
+
+    default void enableMulticall(EthAddress aggregator) {
+        throw new EthereumApiException("multicall is not supported by " + getClass().getSimpleName());
+    }
+
+    default void enableMulticall(EthAccount deployer) {
+        throw new EthereumApiException("multicall is not supported by " + getClass().getSimpleName());
+    }
+
+    default <T> List<T> callAggregated(List<Supplier<T>> calls) {
+        return callInParallel(calls);
+    }
+
+    /**
+     * Releases the threads of the proxy, the node itself is left running.
+     */
+    default void shutdown() {
+    }
+
     boolean addressExists(EthAddress address);
 
     EthValue getBalance(EthAddress address);
@@ -2,19 +2,30 @@ package org.adridadou.ethereum.blockchain;
 
 import java.io.IOException;
 import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
-import java.util.function.Predicate;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Supplier;
 
 import org.adridadou.ethereum.*;
 import org.adridadou.ethereum.handler.EthereumEventHandler;
+import org.adridadou.ethereum.handler.OnBlockParameters;
+import org.adridadou.ethereum.smartcontract.ConstantCallCache;
 import org.adridadou.ethereum.smartcontract.SmartContractReal;
 import org.adridadou.ethereum.smartcontract.SmartContract;
 import org.adridadou.ethereum.values.*;
 import org.adridadou.exception.EthereumApiException;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
 import org.ethereum.core.CallTransaction;
 import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
 import org.ethereum.core.TransactionReceipt;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.facade.Ethereum;
@@ -31,9 +42,25 @@ import org.spongycastle.util.encoders.Hex;
 public class BlockchainProxyReal implements BlockchainProxy {
 
     private static final long BLOCK_WAIT_LIMIT = 16;
+    private static final int SNAPSHOT_CACHE_SIZE = 32;
+    private static final int BLOCK_READERS = 4;
     private final Ethereum ethereum;
     private final EthereumEventHandler eventHandler;
     private final Map<EthAccount, BigInteger> pendingTransactions = new CopyOnWriteMap<>();
+    private final ThreadLocal<StateSnapshot> callSnapshot = new ThreadLocal<>();
+    private final Map<ByteArrayWrapper, StateSnapshot> snapshots = Collections.synchronizedMap(new LinkedHashMap<ByteArrayWrapper, StateSnapshot>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, StateSnapshot> eldest) {
+            return size() > SNAPSHOT_CACHE_SIZE;
+        }
+    });
+    private volatile ConstantCallCache constantCallCache;
+    private final ParallelCallEngine parallelCallEngine = new ParallelCallEngine(Runtime.getRuntime().availableProcessors());
+    private final ExecutorService blockReaders = Executors.newFixedThreadPool(BLOCK_READERS, runnable -> {
+        Thread thread = new Thread(runnable, "block-reader");
+        thread.setDaemon(true);
+        return thread;
+    });
 
     public BlockchainProxyReal(Ethereum ethereum, EthereumEventHandler eventHandler) {
         this.ethereum = ethereum;
@@ -41,6 +68,23 @@ public class BlockchainProxyReal implements BlockchainProxy {
         eventHandler.onReady().thenAccept((b) -> ethereum.getBlockchain().flush());
     }
 
+    @Override
+    public CompletableFuture<OnBlockParameters> getBlockWithReceipts(long blockNumber) {
+        return CompletableFuture.supplyAsync(() -> {
+            Block block = Optional.ofNullable(ethereum.getBlockchain().getBlockByNumber(blockNumber))
+                    .orElseThrow(() -> new EthereumApiException("block " + blockNumber + " not found"));
+            List<TransactionReceipt> receipts = new ArrayList<>();
+            for (Transaction tx : block.getTransactionsList()) {
+                TransactionReceipt receipt = Optional.ofNullable(ethereum.getBlockchain().getTransactionInfo(tx.getHash()))
+                        .map(TransactionInfo::getReceipt)
+                        .orElseThrow(() -> new EthereumApiException("no receipt stored for " + Hex.toHexString(tx.getHash())));
+                receipt.setTransaction(tx);
+                receipts.add(receipt);
+            }
+            return new OnBlockParameters(block, receipts);
+        }, blockReaders);
+    }
+
     @Override
     public SmartContract map(SoliditySource src, String contractName, EthAddress address, EthAccount sender) {
         CompilationResult.ContractMetadata metadata;
@@ -128,18 +172,95 @@ public class BlockchainProxyReal implements BlockchainProxy {
             ethereum.submitTransaction(tx);
             increasePendingTransactionCounter(sender);
             long currentBlock = eventHandler.getCurrentBlockNumber();
+            return waitForReceipt(tx, currentBlock + 1, currentBlock + BLOCK_WAIT_LIMIT)
+                    .whenComplete((receipt, e) -> decreasePendingTransactionCounter(sender));
+        });
+    }
 
-            Predicate<TransactionReceipt> findReceipt = (TransactionReceipt receipt) -> new ByteArrayWrapper(receipt.getTransaction().getHash()).equals(new ByteArrayWrapper(tx.getHash()));
+    // looks the receipt up each time the head moves, the head is followed by a single subscription for all the waiters
+    // and the lookups hit the database on the block readers rather than on the thread that moved the head
+    private CompletableFuture<TransactionReceipt> waitForReceipt(Transaction tx, long blockNumber, long lastBlock) {
+        return eventHandler.getChainHead().waitFor(blockNumber).thenComposeAsync(height -> {
+            Optional<TransactionReceipt> receipt = Optional.ofNullable(ethereum.getBlockchain().getTransactionInfo(tx.getHash()))
+                    .map(TransactionInfo::getReceipt);
+            if (receipt.isPresent()) {
+                receipt.get().setTransaction(tx);
+                return CompletableFuture.completedFuture(eventHandler.checkForErrors(receipt.get()));
+            }
+            if (height > lastBlock) {
+                throw new EthereumApiException("the transaction has not been added to any block after waiting for " + BLOCK_WAIT_LIMIT);
+            }
+            return waitForReceipt(tx, height + 1, lastBlock);
+        }, blockReaders);
+    }
 
-            return CompletableFuture.supplyAsync(() -> eventHandler.observeBlocks()
-                    .filter(params -> params.receipts.stream().anyMatch(findReceipt) || params.block.getNumber() > currentBlock + BLOCK_WAIT_LIMIT)
-                    .map(params -> {
-                        Optional<TransactionReceipt> receipt = params.receipts.stream().filter(findReceipt).findFirst();
-                        decreasePendingTransactionCounter(sender);
-                        return receipt.map(eventHandler::checkForErrors)
-                                .<EthereumApiException>orElseThrow(() -> new EthereumApiException("the transaction has not been added to any block after waiting for " + BLOCK_WAIT_LIMIT));
-                    }).toBlocking().first());
-        });
+    @Override
+    public void setConstantCallCache(ConstantCallCache cache) {
+        if (constantCallCache == null) {
+            eventHandler.observeBlocks().subscribe(params -> Optional.ofNullable(constantCallCache)
+                    .ifPresent(current -> current.onBlock(Hex.toHexString(params.block.getHash()))));
+        }
+        this.constantCallCache = cache;
+    }
+
+    public Optional<ConstantCallCache> getConstantCallCache() {
+        return Optional.ofNullable(constantCallCache);
+    }
+
+    @Override
+    public <T> T callOnSnapshot(Supplier<T> calls) {
+        if (callSnapshot.get() != null) {
+            return calls.get();
+        }
+        return callOnSnapshot(newSnapshot(ethereum.getBlockchain().getBestBlock()), calls);
+    }
+
+    @Override
+    public <T> T callAtBlock(long blockNumber, Supplier<T> calls) {
+        Block block = Optional.ofNullable(ethereum.getBlockchain().getBlockByNumber(blockNumber))
+                .orElseThrow(() -> new EthereumApiException("block " + blockNumber + " not found"));
+        return callOnSnapshot(snapshotOf(block), calls);
+    }
+
+    @Override
+    public <T> List<T> callInParallel(List<Supplier<T>> calls) {
+        Block block = getCallSnapshot().map(snapshot -> snapshot.block)
+                .orElseGet(() -> ethereum.getBlockchain().getBestBlock());
+
+        return parallelCallEngine.execute(calls, worker -> callOnSnapshot(newSnapshot(block), () -> {
+            worker.run();
+            return null;
+        }));
+    }
+
+    private <T> T callOnSnapshot(StateSnapshot snapshot, Supplier<T> calls) {
+        StateSnapshot outer = callSnapshot.get();
+        callSnapshot.set(snapshot);
+        try {
+            return calls.get();
+        } finally {
+            if (outer == null) {
+                callSnapshot.remove();
+            } else {
+                callSnapshot.set(outer);
+            }
+        }
+    }
+
+    public Optional<StateSnapshot> getCallSnapshot() {
+        return Optional.ofNullable(callSnapshot.get());
+    }
+
+    /**
+     * Snapshots of recently used blocks are kept in a LRU so walking over historical blocks doesn't rebuild them for every call.
+     * A cached snapshot can be shared between threads, its calls are serialized.
+     */
+    public StateSnapshot snapshotOf(Block block) {
+        return snapshots.computeIfAbsent(new ByteArrayWrapper(block.getHash()), hash -> newSnapshot(block));
+    }
+
+    public StateSnapshot newSnapshot(Block block) {
+        return new StateSnapshot(block, (BlockchainImpl) ethereum.getBlockchain());
     }
 
     @Override
@@ -147,6 +268,12 @@ public class BlockchainProxyReal implements BlockchainProxy {
         return eventHandler;
     }
 
+    @Override
+    public void shutdown() {
+        parallelCallEngine.shutdown();
+        blockReaders.shutdown();
+    }
+
     @Override
     public boolean addressExists(EthAddress address) {
         return ethereum.getRepository().isExist(address.address);
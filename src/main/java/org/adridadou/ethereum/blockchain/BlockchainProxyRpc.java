@@ -2,6 +2,10 @@ package org.adridadou.ethereum.blockchain;
 
 import org.adridadou.ethereum.*;
 import org.adridadou.ethereum.handler.EthereumEventHandler;
+import org.adridadou.ethereum.handler.OnBlockParameters;
+import org.adridadou.ethereum.handler.OnBlockHandler;
+import org.adridadou.ethereum.handler.OnTransactionHandler;
+import org.adridadou.ethereum.smartcontract.ConstantCallCache;
 import org.adridadou.ethereum.smartcontract.SmartContract;
 import org.adridadou.ethereum.smartcontract.SmartContractRpc;
 import org.adridadou.ethereum.values.*;
@@ -10,19 +14,20 @@ import org.ethereum.core.CallTransaction;
 import org.ethereum.solidity.compiler.CompilationResult;
 import org.ethereum.solidity.compiler.SolidityCompiler;
 import org.ethereum.util.ByteUtil;
-import org.ethereum.util.CopyOnWriteMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
 import org.web3j.crypto.TransactionEncoder;
+import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.methods.request.RawTransaction;
-import org.web3j.protocol.core.methods.response.*;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
 
 import java.io.IOException;
 import java.math.BigInteger;
-import java.util.Map;
+import java.util.List;
 import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 /**
  * Created by davidroon on 20.04.16.
@@ -30,15 +35,26 @@ import java.util.concurrent.CompletableFuture;
  */
 public class BlockchainProxyRpc implements BlockchainProxy {
 
-    private static final int SLEEP_DURATION = 5000;
-    private static final int ATTEMPTS = 120;
     private static final Logger log = LoggerFactory.getLogger(BlockchainProxyRpc.class);
-    private final Map<EthAccount, BigInteger> pendingTransactions = new CopyOnWriteMap<>();
+    private final ThreadLocal<DefaultBlockParameter> callBlock = new ThreadLocal<>();
+    private volatile ConstantCallCache constantCallCache;
+    private volatile BigInteger latestBlockNumber;
+    private volatile MulticallAggregator multicall;
+    private EthereumEventHandler eventHandler;
+    private RpcEventFeed eventFeed;
 
     private final Web3JFacade web3JFacade;
+    private final ChainStateCache chainState;
+    private final NonceCache nonceCache;
+    private final GasEstimator gasEstimator;
+    private final ReceiptTracker receiptTracker;
 
     public BlockchainProxyRpc(Web3JFacade web3jFacade) {
         this.web3JFacade = web3jFacade;
+        this.chainState = new ChainStateCache(web3jFacade);
+        this.nonceCache = new NonceCache(web3jFacade);
+        this.gasEstimator = new GasEstimator(web3jFacade);
+        this.receiptTracker = new ReceiptTracker(web3jFacade, chainState);
     }
 
     @Override
@@ -96,111 +112,207 @@ public class BlockchainProxyRpc implements BlockchainProxy {
         return metadata;
     }
 
-    private CompletableFuture<TransactionReceipt> waitForTransactionReceipt(EthData transactionHash) {
-        return CompletableFuture.supplyAsync(() -> getTransactionReceipt(transactionHash, SLEEP_DURATION, ATTEMPTS)
-                .<EthereumApiException>orElseThrow(() -> new EthereumApiException("Transaction reciept not generated after " + ATTEMPTS + " attempts")));
-    }
+    public CompletableFuture<EthExecutionResult> sendTx(final EthValue value, final EthData data, final EthAccount sender, final EthAddress toAddress) {
+        CompletableFuture<BigInteger> futureNonce = nonceCache.next(sender);
+        CompletableFuture<BigInteger> futureGas = gasEstimator.estimate(sender, toAddress, value, data);
+        CompletableFuture<BigInteger> futureGasPrice = chainState.getGasPrice();
 
-    private Optional<TransactionReceipt> getTransactionReceipt(EthData transactionHash, int sleepDuration, int attempts) {
-        Optional<TransactionReceipt> receiptOptional =
-                sendTransactionReceiptRequest(transactionHash);
-        for (int i = 0; i < attempts; i++) {
-            if (!receiptOptional.isPresent()) {
-                try {
-                    Thread.sleep(sleepDuration);
-                } catch (InterruptedException e) {
-                    throw new EthereumApiException("error while waiting for the transaction receipt", e);
-                }
-                receiptOptional = sendTransactionReceiptRequest(transactionHash);
+        return CompletableFuture.allOf(futureNonce, futureGas, futureGasPrice).thenCompose(v -> {
+            org.ethereum.core.Transaction tx = new org.ethereum.core.Transaction(
+                    ByteUtil.bigIntegerToBytes(futureNonce.join()),
+                    ByteUtil.longToBytesNoLeadZeroes(futureGasPrice.join().longValue()),
+                    ByteUtil.longToBytesNoLeadZeroes(futureGas.join().longValue()),
+                    Optional.ofNullable(toAddress).map(addr -> addr.address).orElse(null),
+                    ByteUtil.longToBytesNoLeadZeroes(value.inWei().longValue()),
+                    data.data);
+            tx.sign(sender.key);
+            return web3JFacade.sendTransaction(EthData.of(tx.getEncoded()));
+        }).whenComplete((hash, error) -> {
+            resetNonceOnError(sender, error);
+            if (error != null) {
+                gasEstimator.onFailure(toAddress, data);
             } else {
-                break;
+                receiptTracker.track(hash).whenComplete((receipt, receiptError) -> {
+                    if (receiptError != null) {
+                        gasEstimator.onFailure(toAddress, data);
+                    } else {
+                        gasEstimator.onReceipt(toAddress, data, futureGas.join(), receipt.getGasUsed());
+                    }
+                });
             }
+        }).thenApply(hash -> new EthExecutionResult(new byte[0]));
+    }
+
+    private void resetNonceOnError(final EthAccount sender, final Throwable error) {
+        if (error != null) {
+            nonceCache.reset(sender);
         }
-        return receiptOptional;
     }
 
-    private Optional<TransactionReceipt> sendTransactionReceiptRequest(EthData transactionHash) {
-        return Optional.ofNullable(web3JFacade.getTransactionReceipt(transactionHash));
+    public CompletableFuture<EthAddress> sendTx(final EthValue ethValue, final EthData data, final EthAccount sender) {
+        CompletableFuture<BigInteger> futureNonce = nonceCache.next(sender);
+        CompletableFuture<BigInteger> futureGas = web3JFacade.estimateGas(sender, null, ethValue, data);
+        CompletableFuture<BigInteger> futureGasPrice = chainState.getGasPrice();
+
+        return CompletableFuture.allOf(futureNonce, futureGas, futureGasPrice).thenCompose(v -> {
+            RawTransaction tx = RawTransaction.createContractTransaction(
+                    futureNonce.join(),
+                    futureGasPrice.join(),
+                    futureGas.join().add(BigInteger.valueOf(100_000)),
+                    ethValue.inWei(),
+                    data.toString());
+            return web3JFacade.sendTransaction(EthData.of(TransactionEncoder.signMessage(tx, sender.credentials)));
+        }).whenComplete((hash, error) -> resetNonceOnError(sender, error))
+                .thenCompose(this::handleTransaction)
+                .thenApply(receipt -> EthAddress.of(receipt.getContractAddress().orElse(null)));
     }
 
-    public CompletableFuture<EthExecutionResult> sendTx(final EthValue value, final EthData data, final EthAccount sender, final EthAddress toAddress) {
-        BigInteger nonce = web3JFacade.getTransactionCount(sender);
-        BigInteger gas = web3JFacade.estimateGas(sender, data);
-        BigInteger gasPrice = web3JFacade.getGasPrice();
-
-        increasePendingTransactionCounter(sender);
-
-        org.ethereum.core.Transaction tx = new org.ethereum.core.Transaction(
-                ByteUtil.bigIntegerToBytes(getNonce(sender, nonce)),
-                ByteUtil.longToBytesNoLeadZeroes(gasPrice.longValue()),
-                ByteUtil.longToBytesNoLeadZeroes(gas.longValue()),
-                Optional.ofNullable(toAddress).map(addr -> addr.address).orElse(null),
-                ByteUtil.longToBytesNoLeadZeroes(value.inWei().longValue()),
-                data.data);
-        tx.sign(sender.key);
-
-        return CompletableFuture.supplyAsync(() -> {
-            web3JFacade.sendTransaction(EthData.of(tx.getEncoded()));
-            decreasePendingTransactionCounter(sender);
-            return new EthExecutionResult(new byte[0]);
+    private CompletableFuture<TransactionReceipt> handleTransaction(final EthData result) {
+
+        log.info("transaction " + result.toString() + " has been sent. Waiting to be mined");
+        return receiptTracker.track(result);
+    }
+
+    @Override
+    public void setConstantCallCache(ConstantCallCache cache) {
+        this.constantCallCache = cache;
+    }
+
+    public Optional<ConstantCallCache> getConstantCallCache() {
+        return Optional.ofNullable(constantCallCache);
+    }
+
+    /**
+     * The head comes from the chain state cache, so it is looked up at most once per second. Cached calls are pinned
+     * to that block number, so a cached result always belongs to the block it is keyed on.
+     */
+    public BigInteger getLatestBlockNumber() {
+        return Web3JFacade.await(getLatestBlockNumberAsync());
+    }
+
+    public CompletableFuture<BigInteger> getLatestBlockNumberAsync() {
+        return chainState.getBlockNumber().thenApply(blockNumber -> {
+            if (!blockNumber.equals(latestBlockNumber)) {
+                getConstantCallCache().ifPresent(cache -> cache.onBlock(DefaultBlockParameter.valueOf(blockNumber).getValue()));
+                latestBlockNumber = blockNumber;
+            }
+            return blockNumber;
         });
     }
 
-    private BigInteger getNonce(final EthAccount account, final BigInteger nonce) {
-        return nonce.add(pendingTransactions.getOrDefault(account, BigInteger.ZERO)).subtract(BigInteger.ONE);
+    /**
+     * The net_version of the node. It is the network id, not the chain id transactions are signed with.
+     */
+    public CompletableFuture<String> getNetworkVersion() {
+        return chainState.getNetworkVersion();
     }
 
-    public CompletableFuture<EthAddress> sendTx(final EthValue ethValue, final EthData data, final EthAccount sender) {
-        BigInteger nonce = web3JFacade.getTransactionCount(sender);
-        BigInteger gas = web3JFacade.estimateGas(sender, data);
-        BigInteger gasPrice = web3JFacade.getGasPrice();
-        increasePendingTransactionCounter(sender);
-
-        RawTransaction tx = RawTransaction.createContractTransaction(
-                getNonce(sender, nonce),
-                gasPrice,
-                gas.add(BigInteger.valueOf(100_000)),
-                ethValue.inWei(),
-                data.toString());
-        EthData signedTx = EthData.of(TransactionEncoder.signMessage(tx, sender.credentials));
-        EthData result = web3JFacade.sendTransaction(signedTx);
-        return this.handleTransaction(result)
-                .thenApply(receipt -> {
-                    decreasePendingTransactionCounter(sender);
-                    return EthAddress.of(receipt.getContractAddress().orElse(null));
-                });
+    @Override
+    public <T> T callOnSnapshot(Supplier<T> calls) {
+        if (callBlock.get() != null) {
+            return calls.get();
+        }
+        callBlock.set(DefaultBlockParameter.valueOf(Web3JFacade.await(web3JFacade.getBlockNumber())));
+        try {
+            return calls.get();
+        } finally {
+            callBlock.remove();
+        }
     }
 
-    private CompletableFuture<TransactionReceipt> handleTransaction(final EthData result) {
+    @Override
+    public <T> T callAtBlock(long blockNumber, Supplier<T> calls) {
+        return callAt(DefaultBlockParameter.valueOf(BigInteger.valueOf(blockNumber)), calls);
+    }
 
-        log.info("transaction " + result.toString() + " has been sent. Waiting to be mined");
-        return waitForTransactionReceipt(result);
+    <T> T callAt(DefaultBlockParameter block, Supplier<T> calls) {
+        DefaultBlockParameter outer = callBlock.get();
+        callBlock.set(block);
+        try {
+            return calls.get();
+        } finally {
+            if (outer == null) {
+                callBlock.remove();
+            } else {
+                callBlock.set(outer);
+            }
+        }
+    }
+
+    public Optional<DefaultBlockParameter> getCallBlock() {
+        return Optional.ofNullable(callBlock.get());
     }
 
     @Override
-    public EthereumEventHandler events() {
-        throw new EthereumApiException("event handling is not yet implemented for RPC");
+    public void enableMulticall(EthAddress aggregator) {
+        replaceMulticall(new MulticallAggregator(web3JFacade, this, aggregator));
     }
 
+    /**
+     * The aggregator contract is published by the deployer the first time aggregated calls are made.
+     */
     @Override
-    public boolean addressExists(EthAddress address) {
-        throw new EthereumApiException("addressExists is not implemented for RPC");
+    public void enableMulticall(EthAccount deployer) {
+        replaceMulticall(new MulticallAggregator(web3JFacade, this, deployer));
+    }
+
+    private synchronized void replaceMulticall(MulticallAggregator aggregator) {
+        Optional.ofNullable(multicall).ifPresent(MulticallAggregator::shutdown);
+        this.multicall = aggregator;
     }
 
     @Override
-    public EthValue getBalance(EthAddress address) {
-        EthGetBalance result = web3JFacade.getBalance(address);
-        if (result.hasError()) {
-            throw new EthereumApiException(result.getError().getMessage());
+    public synchronized void shutdown() {
+        Optional.ofNullable(multicall).ifPresent(MulticallAggregator::shutdown);
+        Optional.ofNullable(eventFeed).ifPresent(RpcEventFeed::stop);
+        receiptTracker.stop();
+    }
+
+    @Override
+    public <T> List<T> callAggregated(List<Supplier<T>> calls) {
+        MulticallAggregator aggregator = multicall;
+        if (aggregator == null) {
+            return callInParallel(calls);
+        }
+        return callOnSnapshot(() -> aggregator.run(calls));
+    }
+
+    public Optional<EthData> getAggregatedResult(EthAccount sender, EthAddress address, CallTransaction.Function func, EthData data) {
+        MulticallAggregator aggregator = multicall;
+        return aggregator == null ? Optional.empty() : aggregator.answer(sender, address, func, data);
+    }
+
+    /**
+     * The chain is only followed once someone asks for the events, from the head at that moment.
+     */
+    @Override
+    public synchronized EthereumEventHandler events() {
+        if (eventHandler == null) {
+            BigInteger head = Web3JFacade.await(chainState.getBlockNumber());
+            eventHandler = new EthereumEventHandler(head.longValue(), new OnBlockHandler(), new OnTransactionHandler());
+            eventFeed = new RpcEventFeed(web3JFacade, chainState, eventHandler);
+            eventFeed.start(head);
         }
-        return EthValue.wei(result.getBalance());
+        return eventHandler;
     }
 
-    private void decreasePendingTransactionCounter(EthAccount sender) {
-        pendingTransactions.put(sender, pendingTransactions.getOrDefault(sender, BigInteger.ZERO).subtract(BigInteger.ONE));
+    @Override
+    public CompletableFuture<OnBlockParameters> getBlockWithReceipts(long blockNumber) {
+        return web3JFacade.getBlock(BigInteger.valueOf(blockNumber)).thenCompose(block -> {
+            if (block == null) {
+                throw new EthereumApiException("block " + blockNumber + " not found");
+            }
+            return RpcEventFeed.withReceipts(web3JFacade, block);
+        });
     }
 
-    private void increasePendingTransactionCounter(EthAccount sender) {
-        pendingTransactions.put(sender, pendingTransactions.getOrDefault(sender, BigInteger.ZERO).add(BigInteger.ONE));
+    @Override
+    public boolean addressExists(EthAddress address) {
+        throw new EthereumApiException("addressExists is not implemented for RPC");
+    }
+
+    @Override
+    public EthValue getBalance(EthAddress address) {
+        return Web3JFacade.await(web3JFacade.getBalance(address).thenApply(EthValue::wei));
     }
 }
@@ -0,0 +1,72 @@
+package org.adridadou.ethereum.blockchain;
+
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Chain state that every send and cached call needs but that changes at most once per block. Concurrent readers
+ * share the same in-flight request, and a failed lookup is never cached.
+ */
+class ChainStateCache {
+    private static final long BLOCK_NUMBER_TTL = 1000;
+    private static final long GAS_PRICE_TTL = 15_000;
+
+    private final Cached<BigInteger> blockNumber;
+    private final Cached<BigInteger> gasPrice;
+    private final Cached<String> networkVersion;
+    private volatile BigInteger lastBlockNumber;
+
+    ChainStateCache(final Web3JFacade web3JFacade) {
+        this.blockNumber = new Cached<>(web3JFacade::getBlockNumber, BLOCK_NUMBER_TTL);
+        this.gasPrice = new Cached<>(web3JFacade::getGasPrice, GAS_PRICE_TTL);
+        this.networkVersion = new Cached<>(web3JFacade::getNetworkVersion, Long.MAX_VALUE);
+    }
+
+    CompletableFuture<BigInteger> getBlockNumber() {
+        return blockNumber.get().thenApply(number -> {
+            if (!number.equals(lastBlockNumber)) {
+                lastBlockNumber = number;
+                // the gas price follows the blocks, a new block makes it stale
+                gasPrice.invalidate();
+            }
+            return number;
+        });
+    }
+
+    CompletableFuture<BigInteger> getGasPrice() {
+        return gasPrice.get();
+    }
+
+    // net_version is the network id, which is not the EIP-155 chain id on every network
+    CompletableFuture<String> getNetworkVersion() {
+        return networkVersion.get();
+    }
+
+    private static class Cached<T> {
+        private final Supplier<CompletableFuture<T>> lookup;
+        private final long ttl;
+        private CompletableFuture<T> value;
+        private long time;
+
+        private Cached(Supplier<CompletableFuture<T>> lookup, long ttl) {
+            this.lookup = lookup;
+            this.ttl = ttl;
+        }
+
+        private synchronized CompletableFuture<T> get() {
+            long now = System.currentTimeMillis();
+            if (value == null || value.isCompletedExceptionally() || now - time > ttl) {
+                value = lookup.get();
+                time = now;
+            }
+            return value;
+        }
+
+        private synchronized void invalidate() {
+            value = null;
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthData;
+import org.adridadou.ethereum.values.EthValue;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Remembers the gas needed per contract, function selector and data size class, so repeated calls are sent without
+ * an eth_estimateGas round trip. The remembered amount is the highest seen so far, from the node's estimates
+ * or from the gas used in receipts, and a margin is added on top. A transaction that fails or runs out of gas
+ * drops the entry, so the next one is estimated live again.
+ */
+class GasEstimator {
+    private static final int MAX_ENTRIES = 1024;
+    private static final BigInteger MARGIN_PERCENT = BigInteger.valueOf(20);
+    private static final BigInteger HUNDRED = BigInteger.valueOf(100);
+
+    private final Web3JFacade web3JFacade;
+    private final Map<Shape, BigInteger> gasByShape = Collections.synchronizedMap(new LinkedHashMap<Shape, BigInteger>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Shape, BigInteger> eldest) {
+            return size() > MAX_ENTRIES;
+        }
+    });
+
+    GasEstimator(Web3JFacade web3JFacade) {
+        this.web3JFacade = web3JFacade;
+    }
+
+    CompletableFuture<BigInteger> estimate(EthAccount sender, EthAddress to, EthValue value, EthData data) {
+        Shape shape = new Shape(to, data);
+        BigInteger known = gasByShape.get(shape);
+        if (known != null) {
+            return CompletableFuture.completedFuture(withMargin(known));
+        }
+        return web3JFacade.estimateGas(sender, to, value, data).thenApply(gas -> {
+            learn(shape, gas);
+            return withMargin(gas);
+        });
+    }
+
+    void onReceipt(EthAddress to, EthData data, BigInteger gasLimit, BigInteger gasUsed) {
+        Shape shape = new Shape(to, data);
+        if (gasUsed.compareTo(gasLimit) >= 0) {
+            // everything has been consumed, most likely an out of gas
+            gasByShape.remove(shape);
+        } else {
+            learn(shape, gasUsed);
+        }
+    }
+
+    void onFailure(EthAddress to, EthData data) {
+        gasByShape.remove(new Shape(to, data));
+    }
+
+    private void learn(Shape shape, BigInteger gas) {
+        gasByShape.merge(shape, gas, BigInteger::max);
+    }
+
+    private static BigInteger withMargin(BigInteger gas) {
+        return gas.add(gas.multiply(MARGIN_PERCENT).divide(HUNDRED));
+    }
+
+    private static class Shape {
+        private final EthAddress to;
+        private final byte[] selector;
+        private final int sizeClass;
+
+        private Shape(EthAddress to, EthData data) {
+            this.to = to;
+            this.selector = Arrays.copyOf(data.data, Math.min(4, data.data.length));
+            this.sizeClass = Integer.highestOneBit(data.data.length);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Shape shape = (Shape) o;
+
+            return sizeClass == shape.sizeClass && Objects.equals(to, shape.to) && Arrays.equals(selector, shape.selector);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(to, Arrays.hashCode(selector), sizeClass);
+        }
+    }
+}
@@ -0,0 +1,290 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthData;
+import org.adridadou.ethereum.values.SoliditySource;
+import org.adridadou.exception.EthereumApiException;
+import org.ethereum.core.CallTransaction;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.core.DefaultBlockParameter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Merges the constant calls of many contracts into one eth_call to an aggregator contract. Each call runs once, on a
+ * thread of its own, and waits at its first constant call until every other call has either made one or finished.
+ * The recorded calls are then sent together and each waiting call gets the returned data as its answer, so the
+ * results go through the usual output converters.
+ * Only functions with static outputs can be aggregated, the others and any further call are sent on their own. The
+ * targets see the aggregator as msg.sender.
+ * The pool can't be bounded below the size of a round, since a round only goes out once all of its callers wait on
+ * it, so a round of n calls holds n threads (MAX_CALLS at most) until it is answered. Idle threads are dropped after
+ * a minute.
+ */
+class MulticallAggregator {
+    private static final Logger log = LoggerFactory.getLogger(MulticallAggregator.class);
+    private static final String CONTRACT_NAME = "MulticallAggregator";
+    private static final String ABI = "[{\"constant\":true,\"inputs\":[{\"name\":\"calls\",\"type\":\"bytes\"}],"
+            + "\"name\":\"aggregate\",\"outputs\":[{\"name\":\"\",\"type\":\"bytes\"}],\"type\":\"function\"}]";
+    private static final int MAX_CALLS = 200;
+    private static final int MAX_SIZE = 0xFFFF;
+    private static final int WORD = 32;
+    private static final AtomicInteger threadCount = new AtomicInteger();
+
+    private final CallTransaction.Function aggregate = new CallTransaction.Contract(ABI).getByName("aggregate");
+    private final ThreadLocal<Slot> slot = new ThreadLocal<>();
+    private final Web3JFacade web3JFacade;
+    private final BlockchainProxyRpc blockchainProxy;
+    private final Supplier<CompletableFuture<EthAddress>> deployment;
+    private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "multicall-" + threadCount.incrementAndGet());
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile CompletableFuture<EthAddress> aggregator;
+
+    MulticallAggregator(Web3JFacade web3JFacade, BlockchainProxyRpc blockchainProxy, EthAddress aggregator) {
+        this.web3JFacade = web3JFacade;
+        this.blockchainProxy = blockchainProxy;
+        this.aggregator = CompletableFuture.completedFuture(aggregator);
+        this.deployment = () -> CompletableFuture.completedFuture(aggregator);
+    }
+
+    MulticallAggregator(Web3JFacade web3JFacade, BlockchainProxyRpc blockchainProxy, EthAccount deployer) {
+        this.web3JFacade = web3JFacade;
+        this.blockchainProxy = blockchainProxy;
+        this.deployment = () -> blockchainProxy.publish(source(), CONTRACT_NAME, deployer);
+    }
+
+    <T> List<T> run(List<Supplier<T>> calls) {
+        if (slot.get() != null) {
+            // nested in an aggregated call, its thread is already waiting on a round
+            return calls.stream().map(Supplier::get).collect(Collectors.toList());
+        }
+        List<T> results = new ArrayList<>();
+        for (int start = 0; start < calls.size(); start += MAX_CALLS) {
+            results.addAll(round(calls.subList(start, Math.min(calls.size(), start + MAX_CALLS))));
+        }
+        return results;
+    }
+
+    /**
+     * Answers a constant call made inside {@link #run}. The first aggregatable call of each caller is recorded and
+     * the caller waits until the round is sent, then gets the answer if the aggregated call succeeded for it.
+     */
+    Optional<EthData> answer(EthAccount sender, EthAddress address, CallTransaction.Function func, EthData data) {
+        Slot current = slot.get();
+        if (current == null || current.done) {
+            return Optional.empty();
+        }
+        int outputSize = outputSize(func);
+        if (outputSize < 0 || data.data.length > MAX_SIZE) {
+            return Optional.empty();
+        }
+        current.call = new Call(sender, address, data, outputSize);
+        current.settle();
+        return current.answer.join();
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+
+    // every caller runs on a thread of its own until it has recorded its call, then they are all answered together
+    private <T> List<T> round(List<Supplier<T>> calls) {
+        CountDownLatch settled = new CountDownLatch(calls.size());
+        Optional<DefaultBlockParameter> block = blockchainProxy.getCallBlock();
+        List<Slot> slots = new ArrayList<>();
+        List<CompletableFuture<T>> results = new ArrayList<>();
+        for (Supplier<T> call : calls) {
+            Slot current = new Slot(settled);
+            slots.add(current);
+            results.add(CompletableFuture.supplyAsync(() -> {
+                slot.set(current);
+                try {
+                    return block.map(b -> blockchainProxy.callAt(b, call)).orElseGet(call);
+                } finally {
+                    current.settle();
+                    slot.remove();
+                }
+            }, executor));
+        }
+
+        try {
+            settled.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            slots.forEach(current -> current.answer.complete(Optional.empty()));
+            throw new EthereumApiException("interrupted while waiting for the aggregated calls", e);
+        }
+        List<Call> recorded = slots.stream().map(current -> current.call).filter(Objects::nonNull).collect(Collectors.toList());
+        Map<Key, EthData> answers = execute(recorded);
+        slots.forEach(current -> current.answer.complete(Optional.ofNullable(current.call)
+                .map(call -> answers.get(new Key(call.address, call.data)))));
+
+        return results.stream().map(Web3JFacade::await).collect(Collectors.toList());
+    }
+
+    private Map<Key, EthData> execute(List<Call> calls) {
+        Map<Key, EthData> answers = new ConcurrentHashMap<>();
+        if (calls.isEmpty()) {
+            return answers;
+        }
+        EthAddress address;
+        try {
+            address = Web3JFacade.await(aggregatorAddress());
+        } catch (RuntimeException e) {
+            log.warn("the multicall aggregator is not available, the calls are sent one by one", e);
+            return answers;
+        }
+        DefaultBlockParameter block = blockchainProxy.getCallBlock()
+                .orElseGet(() -> DefaultBlockParameter.valueOf(blockchainProxy.getLatestBlockNumber()));
+
+        // run() caps each round at MAX_CALLS, they all fit in one aggregated call
+        web3JFacade.constantCall(calls.get(0).sender, address, EthData.of(aggregate.encode(pack(calls))), block)
+                .thenAccept(result -> split(calls, (byte[]) aggregate.decodeResult(result.data)[0], answers))
+                .exceptionally(error -> {
+                    log.debug("aggregated call failed, its calls are sent one by one", error);
+                    return null;
+                }).join();
+        return answers;
+    }
+
+    private CompletableFuture<EthAddress> aggregatorAddress() {
+        CompletableFuture<EthAddress> current = aggregator;
+        if (current == null || current.isCompletedExceptionally()) {
+            synchronized (this) {
+                current = aggregator;
+                if (current == null || current.isCompletedExceptionally()) {
+                    current = deployment.get();
+                    aggregator = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static byte[] pack(List<Call> calls) {
+        ByteArrayOutputStream packed = new ByteArrayOutputStream();
+        for (Call call : calls) {
+            packed.write(call.address.address, 0, call.address.address.length);
+            writeSize(packed, call.data.data.length);
+            writeSize(packed, call.outputSize);
+            packed.write(call.data.data, 0, call.data.data.length);
+        }
+        return packed.toByteArray();
+    }
+
+    private static void writeSize(ByteArrayOutputStream out, int size) {
+        out.write(size >> 8);
+        out.write(size);
+    }
+
+    private static void split(List<Call> calls, byte[] results, Map<Key, EthData> answers) {
+        int position = 0;
+        for (Call call : calls) {
+            boolean success = new BigInteger(1, Arrays.copyOfRange(results, position, position + WORD)).signum() != 0;
+            position += WORD;
+            if (success) {
+                answers.put(new Key(call.address, call.data), EthData.of(Arrays.copyOfRange(results, position, position + call.outputSize)));
+            }
+            position += call.outputSize;
+        }
+    }
+
+    // the size of the encoded outputs, -1 when it is only known after the call
+    private static int outputSize(CallTransaction.Function func) {
+        int size = 0;
+        for (CallTransaction.Param output : func.outputs) {
+            if (output.type.isDynamicType()) {
+                return -1;
+            }
+            size += output.type.getFixedSize();
+        }
+        return size == 0 || size > MAX_SIZE ? -1 : size;
+    }
+
+    private static SoliditySource source() {
+        InputStream source = MulticallAggregator.class.getResourceAsStream(CONTRACT_NAME + ".sol");
+        if (source == null) {
+            throw new EthereumApiException("the multicall aggregator source is missing");
+        }
+        return SoliditySource.from(source);
+    }
+
+    private static class Slot {
+        private final CountDownLatch settled;
+        private final CompletableFuture<Optional<EthData>> answer = new CompletableFuture<>();
+        private volatile Call call;
+        private boolean done;
+
+        private Slot(CountDownLatch settled) {
+            this.settled = settled;
+        }
+
+        // called by the caller thread only, once it has recorded its call or is done without one
+        private void settle() {
+            if (!done) {
+                done = true;
+                settled.countDown();
+            }
+        }
+    }
+
+    private static class Call {
+        private final EthAccount sender;
+        private final EthAddress address;
+        private final EthData data;
+        private final int outputSize;
+
+        private Call(EthAccount sender, EthAddress address, EthData data, int outputSize) {
+            this.sender = sender;
+            this.address = address;
+            this.data = data;
+            this.outputSize = outputSize;
+        }
+    }
+
+    private static class Key {
+        private final EthAddress address;
+        private final EthData data;
+
+        private Key(EthAddress address, EthData data) {
+            this.address = address;
+            this.data = data;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Objects.equals(address, key.address) && Objects.equals(data, key.data);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(address, data);
+        }
+    }
+}
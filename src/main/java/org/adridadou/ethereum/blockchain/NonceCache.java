@@ -0,0 +1,33 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthAccount;
+
+import java.math.BigInteger;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Hands out nonces per account. The node is asked once, and again only after a send has failed; every other
+ * nonce is the previous one plus one.
+ */
+class NonceCache {
+    private final Web3JFacade web3JFacade;
+    private final Map<EthAccount, CompletableFuture<BigInteger>> lastNonces = new ConcurrentHashMap<>();
+
+    NonceCache(Web3JFacade web3JFacade) {
+        this.web3JFacade = web3JFacade;
+    }
+
+    CompletableFuture<BigInteger> next(EthAccount account) {
+        return lastNonces.compute(account, (key, last) -> last == null || last.isCompletedExceptionally()
+                ? web3JFacade.getTransactionCount(account)
+                : last.thenApply(BigInteger.ONE::add));
+    }
+
+    void reset(EthAccount account) {
+        lastNonces.remove(account);
+    }
+}
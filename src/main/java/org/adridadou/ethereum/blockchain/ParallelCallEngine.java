@@ -0,0 +1,81 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.exception.EthereumApiException;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * This code is released under Apache 2 license
+ */
+class ParallelCallEngine {
+    private final ExecutorService executor;
+    private final int parallelism;
+    private final ThreadLocal<Boolean> onWorker = new ThreadLocal<>();
+
+    ParallelCallEngine(int parallelism) {
+        this.parallelism = parallelism;
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(parallelism, runnable -> {
+            Thread thread = new Thread(() -> {
+                onWorker.set(Boolean.TRUE);
+                runnable.run();
+            }, "constant-call-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Runs the calls on the worker pool and returns the results in the order of the calls.
+     * Every worker runs inside its own workerScope, so it can bind its own snapshot before picking up calls.
+     */
+    @SuppressWarnings("unchecked")
+    <T> List<T> execute(List<Supplier<T>> calls, Consumer<Runnable> workerScope) {
+        if (onWorker.get() != null) {
+            // nested in a call already running on the pool, waiting on the pool from there could deadlock it
+            return calls.stream().map(Supplier::get).collect(Collectors.toList());
+        }
+        Object[] results = new Object[calls.size()];
+        AtomicInteger next = new AtomicInteger();
+        Runnable worker = () -> {
+            int index;
+            while ((index = next.getAndIncrement()) < results.length) {
+                try {
+                    results[index] = calls.get(index).get();
+                } catch (RuntimeException e) {
+                    next.set(results.length);
+                    throw e;
+                }
+            }
+        };
+
+        CompletableFuture<?>[] workers = IntStream.range(0, Math.min(parallelism, results.length))
+                .mapToObj(i -> CompletableFuture.runAsync(() -> workerScope.accept(worker), executor))
+                .toArray(CompletableFuture[]::new);
+
+        try {
+            CompletableFuture.allOf(workers).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new EthereumApiException("error while running constant calls in parallel", e.getCause());
+        }
+
+        return Arrays.stream(results).map(result -> (T) result).collect(Collectors.toList());
+    }
+
+    void shutdown() {
+        executor.shutdown();
+    }
+}
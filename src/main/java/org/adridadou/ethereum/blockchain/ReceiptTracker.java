@@ -0,0 +1,141 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthData;
+import org.adridadou.exception.EthereumApiException;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Waits for the receipts of every transaction sent through a proxy. It polls the block number only, and looks up
+ * all the pending receipts in one batch when a new block shows up, so the node load does not grow with the number
+ * of transactions in flight.
+ */
+class ReceiptTracker {
+    private static final long POLL_INTERVAL = 1000;
+    private static final long TIMEOUT = 600_000;
+
+    private final Web3JFacade web3JFacade;
+    private final ChainStateCache chainState;
+    private final long timeout;
+    private final Map<EthData, PendingReceipt> pending = new ConcurrentHashMap<>();
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-receipt-tracker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile BigInteger lastBlock = BigInteger.valueOf(-1);
+
+    ReceiptTracker(Web3JFacade web3JFacade, ChainStateCache chainState) {
+        this(web3JFacade, chainState, POLL_INTERVAL, TIMEOUT);
+    }
+
+    ReceiptTracker(Web3JFacade web3JFacade, ChainStateCache chainState, long pollInterval, long timeout) {
+        this.web3JFacade = web3JFacade;
+        this.chainState = chainState;
+        this.timeout = timeout;
+        scheduler.scheduleWithFixedDelay(this::poll, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+
+    CompletableFuture<TransactionReceipt> track(EthData transactionHash) {
+        return pending.computeIfAbsent(transactionHash, hash -> new PendingReceipt(System.currentTimeMillis() + timeout)).result;
+    }
+
+    /**
+     * Stops polling the node, the receipts still pending fail.
+     */
+    void stop() {
+        scheduler.shutdown();
+        pending.keySet().forEach(hash -> complete(hash).ifPresent(result -> result.completeExceptionally(
+                new EthereumApiException("the proxy was shut down before the receipt for " + hash + " was found"))));
+    }
+
+    int getPendingCount() {
+        return pending.size();
+    }
+
+    private void poll() {
+        if (pending.isEmpty() || !polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            chainState.getBlockNumber()
+                    .thenCompose(blockNumber -> {
+                        boolean newBlock = blockNumber.compareTo(lastBlock) > 0;
+                        lastBlock = blockNumber;
+                        return lookup(newBlock);
+                    })
+                    .whenComplete((v, error) -> done());
+        } catch (RuntimeException e) {
+            // an exception escaping here would cancel the periodic task
+            done();
+        }
+    }
+
+    private void done() {
+        expire();
+        polling.set(false);
+    }
+
+    // on a new block every pending receipt is looked up, otherwise only the ones that have not been looked up yet
+    private CompletableFuture<Void> lookup(boolean newBlock) {
+        List<EthData> hashes = new ArrayList<>();
+        pending.forEach((hash, receipt) -> {
+            if (newBlock || !receipt.lookedUp) {
+                receipt.lookedUp = true;
+                hashes.add(hash);
+            }
+        });
+        if (hashes.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        Map<EthData, CompletableFuture<TransactionReceipt>> receipts = web3JFacade.getTransactionReceipts(hashes);
+        receipts.forEach((hash, future) -> future.whenComplete((receipt, error) -> {
+            if (error != null) {
+                complete(hash).ifPresent(result -> result.completeExceptionally(error));
+            } else if (receipt != null) {
+                complete(hash).ifPresent(result -> result.complete(receipt));
+            }
+        }));
+        return CompletableFuture.allOf(receipts.values().toArray(new CompletableFuture[receipts.size()]))
+                .exceptionally(error -> null);
+    }
+
+    private void expire() {
+        long now = System.currentTimeMillis();
+        pending.forEach((hash, receipt) -> {
+            if (now > receipt.deadline) {
+                complete(hash).ifPresent(result -> result.completeExceptionally(
+                        new EthereumApiException("Transaction receipt for " + hash + " not generated after " + timeout / 1000 + " seconds")));
+            }
+        });
+    }
+
+    private Optional<CompletableFuture<TransactionReceipt>> complete(EthData hash) {
+        return Optional.ofNullable(pending.remove(hash)).map(receipt -> receipt.result);
+    }
+
+    private static class PendingReceipt {
+        private final CompletableFuture<TransactionReceipt> result = new CompletableFuture<>();
+        private final long deadline;
+        private volatile boolean lookedUp;
+
+        private PendingReceipt(long deadline) {
+            this.deadline = deadline;
+        }
+    }
+}
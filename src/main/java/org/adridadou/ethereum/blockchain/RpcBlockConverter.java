@@ -0,0 +1,125 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.web3j.protocol.core.methods.response.EthBlock;
+import org.web3j.protocol.core.methods.response.Log;
+import org.web3j.utils.Numeric;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Turns the JSON-RPC blocks and receipts into the ethereumj types the event handlers publish, so subscribers get the
+ * same objects whichever backend they run on.
+ */
+final class RpcBlockConverter {
+
+    private RpcBlockConverter() {
+    }
+
+    static Block toBlock(EthBlock.Block block) {
+        List<Transaction> transactions = new ArrayList<>();
+        for (EthBlock.TransactionResult result : block.getTransactions()) {
+            transactions.add(toTransaction((org.web3j.protocol.core.methods.response.Transaction) result.get()));
+        }
+        return new Block(
+                bytes(block.getParentHash()),
+                bytes(block.getSha3Uncles()),
+                bytes(block.getMiner()),
+                bytes(block.getLogsBloom()),
+                quantity(block.getDifficulty()),
+                block.getNumber().longValue(),
+                quantity(block.getGasLimit()),
+                block.getGasUsed().longValue(),
+                block.getTimestamp().longValue(),
+                bytes(block.getExtraData()),
+                bytes(block.getMixHash()),
+                bytes(block.getNonce()),
+                bytes(block.getReceiptsRoot()),
+                bytes(block.getTransactionsRoot()),
+                bytes(block.getStateRoot()),
+                transactions,
+                new ArrayList<>());
+    }
+
+    /**
+     * The hash and the sender are the ones the node reports. ethereumj 1.3.6 predates EIP-155, it would compute them
+     * from an encoding and a signature that don't match what was signed.
+     */
+    static Transaction toTransaction(org.web3j.protocol.core.methods.response.Transaction tx) {
+        return new RpcTransaction(
+                quantity(tx.getNonce()),
+                quantity(tx.getGasPrice()),
+                quantity(tx.getGas()),
+                tx.getTo() == null ? null : bytes(tx.getTo()),
+                quantity(tx.getValue()),
+                bytes(tx.getInput()),
+                bytes(tx.getR()),
+                bytes(tx.getS()),
+                recoveryId(tx.getV()),
+                bytes(tx.getHash()),
+                bytes(tx.getFrom()));
+    }
+
+    // EIP-155 folds the chain id into v as chainId * 2 + 35 or 36, what doesn't fit in a byte
+    private static byte recoveryId(int v) {
+        return (byte) (v >= 35 ? 27 + (v - 35) % 2 : v);
+    }
+
+    static TransactionReceipt toReceipt(org.web3j.protocol.core.methods.response.TransactionReceipt receipt, Transaction tx) {
+        List<LogInfo> logs = receipt.getLogs().stream().map(RpcBlockConverter::toLogInfo).collect(Collectors.toList());
+        Bloom bloom = new Bloom();
+        logs.forEach(log -> bloom.or(log.getBloom()));
+
+        TransactionReceipt result = new TransactionReceipt(ByteUtil.EMPTY_BYTE_ARRAY, quantity(receipt.getCumulativeGasUsed()), bloom, logs);
+        result.setGasUsed(quantity(receipt.getGasUsed()));
+        result.setTransaction(tx);
+        return result;
+    }
+
+    static LogInfo toLogInfo(Log log) {
+        List<DataWord> topics = log.getTopics().stream().map(topic -> new DataWord(bytes(topic))).collect(Collectors.toList());
+        return new LogInfo(bytes(log.getAddress()), topics, bytes(log.getData()));
+    }
+
+    private static byte[] bytes(String hex) {
+        return hex == null ? ByteUtil.EMPTY_BYTE_ARRAY : Numeric.hexStringToByteArray(hex);
+    }
+
+    // RLP encodes zero as an empty string, a leading zero byte would change the hashes
+    private static byte[] quantity(BigInteger value) {
+        return value == null || value.signum() == 0 ? ByteUtil.EMPTY_BYTE_ARRAY : ByteUtil.bigIntegerToBytes(value);
+    }
+
+    private static class RpcTransaction extends Transaction {
+        private final byte[] hash;
+        private final byte[] sender;
+
+        private RpcTransaction(byte[] nonce, byte[] gasPrice, byte[] gasLimit, byte[] receiveAddress, byte[] value, byte[] data,
+                               byte[] r, byte[] s, byte v, byte[] hash, byte[] sender) {
+            super(nonce, gasPrice, gasLimit, receiveAddress, value, data, r, s, v);
+            this.hash = hash;
+            this.sender = sender;
+        }
+
+        @Override
+        public byte[] getHash() {
+            return hash.length == 0 ? super.getHash() : hash;
+        }
+
+        @Override
+        public byte[] getSender() {
+            return sender.length == 0 ? super.getSender() : sender;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.handler.EthereumEventHandler;
+import org.adridadou.ethereum.handler.OnBlockParameters;
+import org.adridadou.ethereum.values.EthData;
+import org.ethereum.core.Block;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.listener.EthereumListener;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.web3j.protocol.core.methods.response.EthBlock;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Follows the chain over JSON-RPC and feeds an {@link EthereumEventHandler}. New blocks come from a block filter when
+ * the node supports one, from the block number otherwise, and the blocks a filter did not report are fetched by
+ * number so nothing is skipped. Each block and its receipts are fetched once, whatever the number of subscribers.
+ * A filter that fails is uninstalled and replaced, and a node that refuses filters is asked again less and less
+ * often, up to every few minutes.
+ */
+class RpcEventFeed {
+    private static final Logger log = LoggerFactory.getLogger(RpcEventFeed.class);
+    private static final long POLL_INTERVAL = 1000;
+    private static final int MAX_BLOCKS_PER_POLL = 50;
+    private static final long MAX_INSTALL_BACKOFF = 300_000;
+
+    private final Web3JFacade web3JFacade;
+    private final ChainStateCache chainState;
+    private final EthereumEventHandler eventHandler;
+    private final AtomicBoolean polling = new AtomicBoolean();
+    private final AtomicBoolean installing = new AtomicBoolean();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-event-feed");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile BigInteger lastBlock;
+    private volatile BigInteger knownHead;
+    private volatile BigInteger filterId;
+    private volatile int installFailures;
+    private volatile long nextInstall;
+
+    RpcEventFeed(Web3JFacade web3JFacade, ChainStateCache chainState, EthereumEventHandler eventHandler) {
+        this.web3JFacade = web3JFacade;
+        this.chainState = chainState;
+        this.eventHandler = eventHandler;
+    }
+
+    void start(BigInteger fromBlock) {
+        lastBlock = fromBlock;
+        knownHead = fromBlock;
+        eventHandler.onSyncDone();
+        scheduler.scheduleWithFixedDelay(this::poll, POLL_INTERVAL, POLL_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops following the chain and uninstalls the block filter.
+     */
+    void stop() {
+        scheduler.shutdown();
+        BigInteger filter = filterId;
+        filterId = null;
+        if (filter != null) {
+            web3JFacade.uninstallFilter(filter).exceptionally(error -> false);
+        }
+    }
+
+    private void poll() {
+        if (!polling.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            newBlocks()
+                    .thenCompose(this::publish)
+                    .whenComplete((v, error) -> {
+                        if (error != null) {
+                            log.warn("error while following the chain", error);
+                        }
+                        polling.set(false);
+                    });
+        } catch (RuntimeException e) {
+            log.warn("error while following the chain", e);
+            polling.set(false);
+        }
+    }
+
+    private CompletableFuture<List<EthBlock.Block>> newBlocks() {
+        BigInteger filter = filterId;
+        if (filter == null) {
+            installFilter();
+            return chainState.getBlockNumber().thenCompose(this::fetchUpTo);
+        }
+        return web3JFacade.getBlockFilterChanges(filter)
+                .thenCompose(hashes -> all(hashes.stream().map(web3JFacade::getBlock).collect(Collectors.toList())))
+                .thenCompose(this::fillGaps)
+                .whenComplete((blocks, error) -> {
+                    if (error != null) {
+                        // filters expire on most nodes, the next poll goes by number and installs a new one
+                        filterId = null;
+                        web3JFacade.uninstallFilter(filter).exceptionally(uninstallError -> false);
+                    }
+                });
+    }
+
+    // a hash unknown to the node serving the lookup, lagging or reorged away, is read by number instead, and the blocks
+    // a filter skipped are read by number too, a poll going at most MAX_BLOCKS_PER_POLL past the last published block
+    private CompletableFuture<List<EthBlock.Block>> fillGaps(List<EthBlock.Block> reportedBlocks) {
+        BigInteger last = lastBlock;
+        BigInteger highest = reportedBlocks.stream()
+                .filter(Objects::nonNull)
+                .map(EthBlock.Block::getNumber)
+                .reduce(knownHead.max(last), BigInteger::max);
+        knownHead = highest;
+        BigInteger limit = highest.min(last.add(BigInteger.valueOf(MAX_BLOCKS_PER_POLL)));
+        Map<BigInteger, EthBlock.Block> reported = reportedBlocks.stream()
+                .filter(block -> block != null && block.getNumber().compareTo(limit) <= 0)
+                .collect(Collectors.toMap(EthBlock.Block::getNumber, Function.identity(), (first, second) -> second));
+        List<CompletableFuture<EthBlock.Block>> missing = new ArrayList<>();
+        for (BigInteger number = last.add(BigInteger.ONE); number.compareTo(limit) <= 0; number = number.add(BigInteger.ONE)) {
+            if (!reported.containsKey(number)) {
+                missing.add(web3JFacade.getBlock(number));
+            }
+        }
+        return all(missing).thenApply(filled -> {
+            List<EthBlock.Block> result = new ArrayList<>(reported.values());
+            result.addAll(filled);
+            return result;
+        });
+    }
+
+    private void installFilter() {
+        if (System.currentTimeMillis() < nextInstall || !installing.compareAndSet(false, true)) {
+            return;
+        }
+        web3JFacade.newBlockFilter().whenComplete((id, error) -> {
+            if (error == null && scheduler.isShutdown()) {
+                web3JFacade.uninstallFilter(id).exceptionally(uninstallError -> false);
+            } else if (error == null) {
+                installFailures = 0;
+                filterId = id;
+            } else {
+                installFailures++;
+                nextInstall = System.currentTimeMillis() + Math.min(MAX_INSTALL_BACKOFF, POLL_INTERVAL << Math.min(installFailures, 20));
+                log.debug("block filters are not available, following the block number", error);
+            }
+            installing.set(false);
+        });
+    }
+
+    private CompletableFuture<List<EthBlock.Block>> fetchUpTo(BigInteger head) {
+        knownHead = knownHead.max(head);
+        List<CompletableFuture<EthBlock.Block>> blocks = new ArrayList<>();
+        BigInteger number = lastBlock.add(BigInteger.ONE);
+        for (int i = 0; i < MAX_BLOCKS_PER_POLL && number.compareTo(head) <= 0; i++, number = number.add(BigInteger.ONE)) {
+            blocks.add(web3JFacade.getBlock(number));
+        }
+        return all(blocks);
+    }
+
+    private CompletableFuture<Void> publish(List<EthBlock.Block> blocks) {
+        List<EthBlock.Block> ordered = blocks.stream()
+                .filter(block -> block != null && block.getNumber().compareTo(lastBlock) > 0)
+                .sorted(Comparator.comparing(EthBlock.Block::getNumber))
+                .collect(Collectors.toList());
+        CompletableFuture<Void> published = CompletableFuture.completedFuture(null);
+        for (EthBlock.Block block : ordered) {
+            published = published.thenCompose(v -> publish(block));
+        }
+        return published;
+    }
+
+    private CompletableFuture<Void> publish(EthBlock.Block rpcBlock) {
+        if (rpcBlock.getNumber().compareTo(lastBlock) <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return withReceipts(web3JFacade, rpcBlock).thenAccept(params -> {
+            eventHandler.onBlock(params.block, params.receipts);
+            params.receipts.forEach(receipt -> eventHandler.onPendingTransactionUpdate(receipt, EthereumListener.PendingTransactionState.INCLUDED, params.block));
+            lastBlock = rpcBlock.getNumber();
+        });
+    }
+
+    static CompletableFuture<OnBlockParameters> withReceipts(Web3JFacade web3JFacade, EthBlock.Block rpcBlock) {
+        List<EthData> hashes = rpcBlock.getTransactions().stream()
+                .map(result -> EthData.of(((org.web3j.protocol.core.methods.response.Transaction) result.get()).getHash()))
+                .collect(Collectors.toList());
+        Map<EthData, CompletableFuture<org.web3j.protocol.core.methods.response.TransactionReceipt>> receipts = web3JFacade.getTransactionReceipts(hashes);
+
+        return CompletableFuture.allOf(receipts.values().toArray(new CompletableFuture[receipts.size()])).thenApply(v -> {
+            Block block = RpcBlockConverter.toBlock(rpcBlock);
+            List<TransactionReceipt> blockReceipts = new ArrayList<>();
+            for (int i = 0; i < hashes.size(); i++) {
+                blockReceipts.add(RpcBlockConverter.toReceipt(receipts.get(hashes.get(i)).join(), block.getTransactionsList().get(i)));
+            }
+            return new OnBlockParameters(block, blockReceipts);
+        });
+    }
+
+    private static <T> CompletableFuture<List<T>> all(List<CompletableFuture<T>> futures) {
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[futures.size()]))
+                .thenApply(v -> futures.stream().map(CompletableFuture::join).collect(Collectors.toList()));
+    }
+}
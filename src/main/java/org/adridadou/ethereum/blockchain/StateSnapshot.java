@@ -0,0 +1,42 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthData;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockchainImpl;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionExecutor;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class StateSnapshot {
+    public final Block block;
+    private final Repository repository;
+    private final BlockchainImpl blockchain;
+
+    StateSnapshot(Block block, BlockchainImpl blockchain) {
+        this.block = block;
+        this.blockchain = blockchain;
+        this.repository = blockchain.getRepository().getSnapshotTo(block.getStateRoot());
+    }
+
+    public synchronized EthData call(Transaction tx) {
+        Repository track = repository.startTracking();
+        try {
+            TransactionExecutor executor = new TransactionExecutor
+                    (tx, block.getCoinbase(), track, blockchain.getBlockStore(),
+                            blockchain.getProgramInvokeFactory(), block)
+                    .setLocalCall(true);
+
+            executor.init();
+            executor.execute();
+            executor.go();
+            executor.finalization();
+
+            return EthData.of(executor.getResult().getHReturn());
+        } finally {
+            track.rollback();
+        }
+    }
+}
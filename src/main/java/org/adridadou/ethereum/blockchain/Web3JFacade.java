@@ -3,93 +3,201 @@ package org.adridadou.ethereum.blockchain;
 import org.adridadou.ethereum.values.EthAccount;
 import org.adridadou.ethereum.values.EthAddress;
 import org.adridadou.ethereum.values.EthData;
+import org.adridadou.ethereum.values.EthValue;
+import org.adridadou.ethereum.rpc.AdmissionControlService;
+import org.adridadou.ethereum.rpc.BatchingHttpService;
+import org.adridadou.ethereum.rpc.RpcBatch;
 import org.adridadou.exception.EthereumApiException;
 import org.web3j.protocol.Web3j;
+import org.web3j.protocol.Web3jService;
 import org.web3j.protocol.core.DefaultBlockParameter;
 import org.web3j.protocol.core.DefaultBlockParameterName;
+import org.web3j.protocol.core.Request;
 import org.web3j.protocol.core.Response;
 import org.web3j.protocol.core.methods.request.Transaction;
 import org.web3j.protocol.core.methods.response.*;
 import org.web3j.utils.Numeric;
 
-import java.io.IOError;
-import java.io.IOException;
 import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 /**
  * Created by davidroon on 19.11.16.
  * This code is released under Apache 2 license
  */
 public class Web3JFacade {
+    // waits on the futures of services that don't complete a CompletableFuture, off the common pool
+    private static final ExecutorService waiters = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "web3j-response");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     private final Web3j web3j;
+    private final BatchingHttpService batchingService;
 
     public Web3JFacade(final Web3j web3j) {
+        this(web3j, null);
+    }
+
+    public Web3JFacade(final Web3jService service) {
+        this(Web3j.build(service), batchingService(service));
+    }
+
+    private Web3JFacade(final Web3j web3j, final BatchingHttpService batchingService) {
         this.web3j = web3j;
+        this.batchingService = batchingService;
     }
 
-    public EthData constantCall(final EthAccount sender, final EthAddress address, final EthData data) {
-        try {
-            return EthData.of(handleError(web3j.ethCall(new Transaction(
-                    sender.getAddress().withLeading0x(),
-                    BigInteger.ZERO,
-                    BigInteger.ZERO,
-                    BigInteger.valueOf(1_000_000_000),
-                    address.withLeading0x(), BigInteger.ZERO,
-                    data.toString()
-            ), DefaultBlockParameter.valueOf("latest")).send()));
-        } catch (IOException e) {
-            throw new IOError(e);
-        }
+    public CompletableFuture<EthData> constantCall(final EthAccount sender, final EthAddress address, final EthData data) {
+        return constantCall(sender, address, data, DefaultBlockParameterName.LATEST);
     }
 
-    public TransactionReceipt getTransactionReceipt(final EthData transactionHash) {
-        try {
-            return handleError(web3j.ethGetTransactionReceipt(transactionHash.toString()).send());
-        } catch (IOException e) {
-            throw new IOError(e);
-        }
+    public CompletableFuture<EthData> constantCall(final EthAccount sender, final EthAddress address, final EthData data, final DefaultBlockParameter block) {
+        return send(web3j.ethCall(new Transaction(
+                sender.getAddress().withLeading0x(),
+                BigInteger.ZERO,
+                BigInteger.ZERO,
+                BigInteger.valueOf(1_000_000_000),
+                address.withLeading0x(), BigInteger.ZERO,
+                data.toString()
+        ), block)).thenApply(response -> EthData.of(handleError(response)));
     }
 
-    public BigInteger getTransactionCount(EthAccount sender) {
-        try {
-            return Numeric.decodeQuantity(handleError(web3j.ethGetTransactionCount(sender.getAddress().withLeading0x(), DefaultBlockParameterName.LATEST).send()));
-        } catch (IOException e) {
-            throw new IOError(e);
-        }
+    public CompletableFuture<BigInteger> getBlockNumber() {
+        return send(web3j.ethBlockNumber()).thenApply(response -> Numeric.decodeQuantity(handleError(response)));
     }
 
-    public BigInteger estimateGas(EthAccount sender, EthData data) {
-        try {
-            return Numeric.decodeQuantity(handleError(web3j.ethEstimateGas(Transaction.createEthCallTransaction(sender.getAddress().withLeading0x(), data.toString())).send()));
-        } catch (IOException e) {
-            throw new IOError(e);
-        }
+    public CompletableFuture<EthBlock.Block> getBlock(final BigInteger blockNumber) {
+        return send(web3j.ethGetBlockByNumber(DefaultBlockParameter.valueOf(blockNumber), true)).thenApply(this::handleError);
     }
 
-    public BigInteger getGasPrice() {
-        try {
-            return Numeric.decodeQuantity(handleError(web3j.ethGasPrice().send()));
-        } catch (IOException e) {
-            throw new IOError(e);
+    public CompletableFuture<EthBlock.Block> getBlock(final String blockHash) {
+        return send(web3j.ethGetBlockByHash(blockHash, true)).thenApply(this::handleError);
+    }
+
+    public CompletableFuture<BigInteger> newBlockFilter() {
+        return send(web3j.ethNewBlockFilter()).thenApply(response -> Numeric.decodeQuantity(handleError(response)));
+    }
+
+    public CompletableFuture<List<String>> getBlockFilterChanges(final BigInteger filterId) {
+        return send(web3j.ethGetFilterChanges(filterId)).thenApply(response -> handleError(response).stream()
+                .map(result -> String.valueOf(result.get()))
+                .collect(Collectors.toList()));
+    }
+
+    public CompletableFuture<Boolean> uninstallFilter(final BigInteger filterId) {
+        return send(web3j.ethUninstallFilter(filterId)).thenApply(this::handleError);
+    }
+
+    public CompletableFuture<String> getNetworkVersion() {
+        return send(web3j.netVersion()).thenApply(this::handleError);
+    }
+
+    public CompletableFuture<TransactionReceipt> getTransactionReceipt(final EthData transactionHash) {
+        return send(web3j.ethGetTransactionReceipt(transactionHash.toString())).thenApply(this::handleError);
+    }
+
+    /**
+     * On a batching transport all the lookups go to the node as a single request.
+     */
+    public Map<EthData, CompletableFuture<TransactionReceipt>> getTransactionReceipts(final Collection<EthData> transactionHashes) {
+        Map<EthData, CompletableFuture<TransactionReceipt>> result = new HashMap<>();
+        if (batchingService == null) {
+            transactionHashes.forEach(hash -> result.put(hash, getTransactionReceipt(hash)));
+            return result;
         }
+        RpcBatch batch = batchingService.batch();
+        transactionHashes.forEach(hash -> result.put(hash, batch
+                .add(web3j.ethGetTransactionReceipt(hash.toString()), EthGetTransactionReceipt.class)
+                .thenApply(this::handleError)));
+        batch.send();
+        return result;
+    }
+
+    public CompletableFuture<BigInteger> getTransactionCount(EthAccount sender) {
+        return send(web3j.ethGetTransactionCount(sender.getAddress().withLeading0x(), DefaultBlockParameterName.PENDING))
+                .thenApply(response -> Numeric.decodeQuantity(handleError(response)));
+    }
+
+    /**
+     * @param to the called contract, or null for a contract creation
+     */
+    public CompletableFuture<BigInteger> estimateGas(EthAccount sender, EthAddress to, EthValue value, EthData data) {
+        return send(web3j.ethEstimateGas(new Transaction(
+                sender.getAddress().withLeading0x(),
+                null,
+                null,
+                null,
+                to == null ? null : to.withLeading0x(),
+                value.inWei(),
+                data.toString())))
+                .thenApply(response -> Numeric.decodeQuantity(handleError(response)));
     }
 
-    public EthData sendTransaction(final EthData rawTransaction) {
+    public CompletableFuture<BigInteger> getGasPrice() {
+        return send(web3j.ethGasPrice()).thenApply(response -> Numeric.decodeQuantity(handleError(response)));
+    }
+
+    public CompletableFuture<EthData> sendTransaction(final EthData rawTransaction) {
+        return send(web3j.ethSendRawTransaction(rawTransaction.withLeading0x())).thenApply(response -> EthData.of(handleError(response)));
+    }
+
+    public CompletableFuture<BigInteger> getBalance(EthAddress address) {
+        return send(web3j.ethGetBalance(address.withLeading0x(), DefaultBlockParameterName.LATEST))
+                .thenApply(response -> Numeric.decodeQuantity(handleError(response)));
+    }
+
+    /**
+     * Blocks until the future completes and rethrows its failure unwrapped. Only meant for the places where
+     * the public API is synchronous.
+     */
+    public static <T> T await(final CompletableFuture<T> future) {
         try {
-            return EthData.of(handleError(web3j.ethSendRawTransaction(rawTransaction.withLeading0x()).send()));
-        } catch (IOException e) {
-            throw new IOError(e);
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new EthereumApiException("error while calling the node", e.getCause());
         }
     }
 
-    public EthGetBalance getBalance(EthAddress address) {
-        try {
-            return web3j.ethGetBalance(address.withLeading0x(), DefaultBlockParameter.valueOf("latest")).send();
-        } catch (IOException e) {
-            throw new IOError(e);
+    // a receipt batch reaches the node as a single request, it goes straight to the transport behind admission control
+    private static BatchingHttpService batchingService(final Web3jService service) {
+        if (service instanceof AdmissionControlService) {
+            return batchingService(((AdmissionControlService) service).getService());
         }
+        return service instanceof BatchingHttpService ? (BatchingHttpService) service : null;
     }
 
+    @SuppressWarnings("unchecked")
+    private <T extends Response> CompletableFuture<T> send(final Request<?, T> request) {
+        Future<T> future = request.sendAsync();
+        if (future instanceof CompletableFuture) {
+            return (CompletableFuture<T>) future;
+        }
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new EthereumApiException("interrupted while waiting for " + request.getMethod(), e);
+            } catch (ExecutionException e) {
+                throw new CompletionException(e.getCause());
+            }
+        }, waiters);
+    }
 
     private <S, T extends Response<S>> S handleError(final T response) {
         if (response.hasError()) {
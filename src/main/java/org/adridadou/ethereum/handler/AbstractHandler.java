@@ -1,18 +1,20 @@
 package org.adridadou.ethereum.handler;
 
-import com.google.common.collect.Sets;
 import rx.Observable;
 import rx.Subscriber;
-
-import java.util.Set;
-import java.util.stream.Collectors;
+import rx.subscriptions.Subscriptions;
 
 /**
  * Created by davidroon on 19.08.16.
  * This code is released under Apache 2 license
+ * <p>
+ * The subscribers are kept in an array that is copied on subscribe and unsubscribe only, so publishing an event is a
+ * plain loop over the current snapshot, without locking or allocating.
  */
 public class AbstractHandler<T> implements Observable.OnSubscribe<T> {
-    private final Set<Subscriber<? super T>> subscribers = Sets.newConcurrentHashSet();
+    private static final Subscriber[] NO_SUBSCRIBERS = new Subscriber[0];
+
+    private volatile Subscriber<? super T>[] subscribers = noSubscribers();
     public final Observable<T> observable;
 
     public AbstractHandler() {
@@ -20,24 +22,63 @@ public class AbstractHandler<T> implements Observable.OnSubscribe<T> {
     }
 
     public void newBlock(final T param) {
-        removeUnSubscribed();
-        subscribers.forEach(subscriber -> subscriber.onNext(param));
+        publish(param);
     }
 
     @Override
     public void call(Subscriber<? super T> subscriber) {
-        subscribers.add(subscriber);
-        removeUnSubscribed();
+        synchronized (this) {
+            Subscriber<? super T>[] current = subscribers;
+            Subscriber<? super T>[] updated = new Subscriber[current.length + 1];
+            System.arraycopy(current, 0, updated, 0, current.length);
+            updated[current.length] = subscriber;
+            subscribers = updated;
+        }
+        // runs right away if the subscriber is already unsubscribed
+        subscriber.add(Subscriptions.create(() -> remove(subscriber)));
     }
 
-    private void removeUnSubscribed() {
-        Set<Subscriber<? super T>> unsubscribed = subscribers.stream().filter(Subscriber::isUnsubscribed).collect(Collectors.toSet());
-        subscribers.removeAll(unsubscribed);
+    public void onTransaction(final T param) {
+        publish(param);
     }
 
-    public void onTransaction(final T param) {
-        removeUnSubscribed();
-        subscribers.forEach(subscriber -> subscriber.onNext(param));
+    public int getSubscriberCount() {
+        return subscribers.length;
     }
 
+    private void publish(final T param) {
+        // a subscriber can unsubscribe after the snapshot is read, it is skipped until its removal lands
+        for (Subscriber<? super T> subscriber : subscribers) {
+            if (!subscriber.isUnsubscribed()) {
+                subscriber.onNext(param);
+            }
+        }
+    }
+
+    private synchronized void remove(Subscriber<? super T> subscriber) {
+        Subscriber<? super T>[] current = subscribers;
+        int index = -1;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == subscriber) {
+                index = i;
+                break;
+            }
+        }
+        if (index < 0) {
+            return;
+        }
+        if (current.length == 1) {
+            subscribers = noSubscribers();
+            return;
+        }
+        Subscriber<? super T>[] updated = new Subscriber[current.length - 1];
+        System.arraycopy(current, 0, updated, 0, index);
+        System.arraycopy(current, index + 1, updated, index, current.length - index - 1);
+        subscribers = updated;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> Subscriber<? super T>[] noSubscribers() {
+        return NO_SUBSCRIBERS;
+    }
 }
@@ -0,0 +1,24 @@
+package org.adridadou.ethereum.handler;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * A block that reached the confirmation depth, or a confirmed block that a deeper reorg took out of the chain.
+ */
+public class BlockConfirmation {
+    public final OnBlockParameters params;
+    public final boolean retracted;
+
+    public BlockConfirmation(OnBlockParameters params, boolean retracted) {
+        this.params = params;
+        this.retracted = retracted;
+    }
+
+    @Override
+    public String toString() {
+        return "BlockConfirmation{" +
+                "block=" + params.block.getNumber() +
+                ", retracted=" + retracted +
+                '}';
+    }
+}
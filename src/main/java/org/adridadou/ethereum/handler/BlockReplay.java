@@ -0,0 +1,206 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.exception.EthereumApiException;
+import org.ethereum.db.ByteArrayWrapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.Subscriber;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.LongConsumer;
+import java.util.function.LongFunction;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Replays the blocks from a given number and then follows the live ones. The live blocks are buffered from the
+ * moment of the subscription, the history is read up to the head with several blocks in flight and published in
+ * order, and the buffer takes over once the replay caught up with it. Every block is published once, in order, and a
+ * live block that skips some numbers has the missing ones read first.
+ * A block replacing one already published, within the last 128 blocks, is published again with the blocks that follow
+ * it, so the subscriber sees the reorg and can undo what it did for the replaced ones.
+ * The replays share a few threads, a session only holds one while it reads history. A block of the history that can't
+ * be read, or isn't found yet by a node behind the others, is read again with a growing delay instead of ending the
+ * replay.
+ */
+public class BlockReplay {
+    private static final int PARALLELISM = 16;
+    private static final int REORG_DEPTH = 128;
+    private static final long RETRY_DELAY = 500;
+    private static final long MAX_RETRY_DELAY = 30_000;
+    private static final LongConsumer NO_CHECKPOINT = blockNumber -> { };
+    private static final Logger log = LoggerFactory.getLogger(BlockReplay.class);
+    private static final ExecutorService replays = Executors.newFixedThreadPool(4, runnable -> {
+        Thread thread = new Thread(runnable, "ethereum-replay");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final LongFunction<CompletableFuture<OnBlockParameters>> blocks;
+    private final EthereumEventHandler events;
+    private final long retryDelay;
+
+    public BlockReplay(LongFunction<CompletableFuture<OnBlockParameters>> blocks, EthereumEventHandler events) {
+        this(blocks, events, RETRY_DELAY);
+    }
+
+    BlockReplay(LongFunction<CompletableFuture<OnBlockParameters>> blocks, EthereumEventHandler events, long retryDelay) {
+        this.blocks = blocks;
+        this.events = events;
+        this.retryDelay = retryDelay;
+    }
+
+    public Observable<OnBlockParameters> from(long fromBlock) {
+        return Observable.create(subscriber -> new Session(subscriber, fromBlock, NO_CHECKPOINT).start());
+    }
+
+    /**
+     * Resumes after the last block checkpointed by the consumer, from fromBlock the first time. A block is
+     * checkpointed once the subscriber returns from it, so the processing has to be done by then: a block that was
+     * not fully processed before a crash is published again.
+     */
+    public Observable<OnBlockParameters> from(String consumer, CheckpointStore checkpoints, long fromBlock) {
+        return Observable.defer(() -> {
+            long start = checkpoints.get(consumer).map(blockNumber -> blockNumber + 1).orElse(fromBlock);
+            return Observable.create(subscriber -> new Session(subscriber, start,
+                    blockNumber -> checkpoints.checkpoint(consumer, blockNumber)).start());
+        });
+    }
+
+    private class Session {
+        private final Subscriber<? super OnBlockParameters> subscriber;
+        private final LongConsumer processed;
+        private final Deque<OnBlockParameters> buffer = new ArrayDeque<>();
+        private final Map<Long, ByteArrayWrapper> published = new HashMap<>();
+        private long last;
+        private boolean live;
+
+        private Session(Subscriber<? super OnBlockParameters> subscriber, long fromBlock, LongConsumer processed) {
+            this.subscriber = subscriber;
+            this.processed = processed;
+            this.last = fromBlock - 1;
+        }
+
+        private void start() {
+            subscriber.add(events.observeBlocks().subscribe(this::onLive));
+            // read after subscribing, whatever is published from now on is in the buffer
+            catchUp(events.getCurrentBlockNumber());
+        }
+
+        private void catchUp(long head) {
+            replays.execute(() -> {
+                try {
+                    replay(head);
+                } catch (RuntimeException e) {
+                    subscriber.onError(e);
+                }
+            });
+        }
+
+        private void replay(long head) {
+            long target = head;
+            while (true) {
+                replayUpTo(target);
+                synchronized (this) {
+                    while (!buffer.isEmpty() && buffer.peek().block.getNumber() <= last + 1) {
+                        publish(buffer.poll());
+                    }
+                    if (buffer.isEmpty()) {
+                        live = true;
+                        return;
+                    }
+                    // the buffered blocks do not follow the last published one, the gap is read first
+                    target = buffer.peek().block.getNumber() - 1;
+                }
+            }
+        }
+
+        private void replayUpTo(long head) {
+            Deque<CompletableFuture<OnBlockParameters>> inFlight = new ArrayDeque<>();
+            long next = last + 1;
+            while ((next <= head || !inFlight.isEmpty()) && !subscriber.isUnsubscribed()) {
+                while (next <= head && inFlight.size() < PARALLELISM) {
+                    inFlight.add(blocks.apply(next++));
+                }
+                OnBlockParameters params = read(next - inFlight.size(), inFlight.poll());
+                if (params == null) {
+                    return;
+                }
+                synchronized (this) {
+                    publish(params);
+                }
+            }
+        }
+
+        // the replay never goes past the head, a block that can't be read is only missing for now
+        private OnBlockParameters read(long number, CompletableFuture<OnBlockParameters> block) {
+            long delay = retryDelay;
+            while (true) {
+                try {
+                    OnBlockParameters params = block.join();
+                    if (params != null) {
+                        return params;
+                    }
+                    log.debug("block " + number + " not found, retrying in " + delay + "ms");
+                } catch (CompletionException | CancellationException e) {
+                    log.warn("reading block " + number + " failed, retrying in " + delay + "ms", e);
+                }
+                if (subscriber.isUnsubscribed()) {
+                    return null;
+                }
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new EthereumApiException("interrupted while reading block " + number, e);
+                }
+                delay = Math.min(MAX_RETRY_DELAY, delay * 2);
+                block = blocks.apply(number);
+            }
+        }
+
+        private synchronized void onLive(OnBlockParameters params) {
+            if (!live) {
+                buffer.add(params);
+            } else if (params.block.getNumber() > last + 1) {
+                // a live block was missed, it is read before going on
+                live = false;
+                buffer.add(params);
+                catchUp(params.block.getNumber() - 1);
+            } else {
+                publish(params);
+            }
+        }
+
+        private void publish(OnBlockParameters params) {
+            long number = params.block.getNumber();
+            ByteArrayWrapper hash = new ByteArrayWrapper(params.block.getHash());
+            if (subscriber.isUnsubscribed()) {
+                return;
+            }
+            if (number <= last) {
+                ByteArrayWrapper replaced = published.get(number);
+                if (replaced == null || replaced.equals(hash)) {
+                    return;
+                }
+                // a reorg, the new block is published again so the subscriber can undo the ones it replaces
+                log.info("block " + number + " was replaced, replaying from it");
+                published.keySet().removeIf(later -> later > number);
+            }
+            last = number;
+            published.put(number, hash);
+            published.remove(number - REORG_DEPTH);
+            subscriber.onNext(params);
+            processed.accept(last);
+        }
+    }
+}
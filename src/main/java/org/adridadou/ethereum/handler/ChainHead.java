@@ -0,0 +1,87 @@
+package org.adridadou.ethereum.handler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Height of the chain as the node last imported it, readable from any thread, and futures completed once a given
+ * height is reached. The waiters sit in a queue ordered by height, each new block completes all the ones it reaches
+ * in one go, off the import thread.
+ */
+public class ChainHead {
+    private final AtomicLong height;
+    private final PriorityQueue<Waiter> waiters = new PriorityQueue<>((a, b) -> Long.compare(a.height, b.height));
+    private final Executor executor;
+
+    public ChainHead(long height) {
+        this(height, ForkJoinPool.commonPool());
+    }
+
+    public ChainHead(long height, Executor executor) {
+        this.height = new AtomicLong(height);
+        this.executor = executor;
+    }
+
+    public long getHeight() {
+        return height.get();
+    }
+
+    public int getWaiterCount() {
+        synchronized (waiters) {
+            return waiters.size();
+        }
+    }
+
+    /**
+     * Completes with the height once it is at least blockNumber.
+     */
+    public CompletableFuture<Long> waitFor(long blockNumber) {
+        long current = height.get();
+        if (current >= blockNumber) {
+            return CompletableFuture.completedFuture(current);
+        }
+        Waiter waiter = new Waiter(blockNumber);
+        synchronized (waiters) {
+            waiters.add(waiter);
+        }
+        // the head may have moved before the waiter was queued
+        advance(height.get());
+        return waiter.future;
+    }
+
+    /**
+     * A reorg can lower the height, the waiters already completed stay completed.
+     */
+    public void update(long blockNumber) {
+        height.set(blockNumber);
+        advance(blockNumber);
+    }
+
+    private void advance(long blockNumber) {
+        List<Waiter> reached = new ArrayList<>();
+        synchronized (waiters) {
+            while (!waiters.isEmpty() && waiters.peek().height <= blockNumber) {
+                reached.add(waiters.poll());
+            }
+        }
+        if (!reached.isEmpty()) {
+            executor.execute(() -> reached.forEach(waiter -> waiter.future.complete(blockNumber)));
+        }
+    }
+
+    private static class Waiter {
+        private final long height;
+        private final CompletableFuture<Long> future = new CompletableFuture<>();
+
+        private Waiter(long height) {
+            this.height = height;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.ethereum.EthereumFacade;
+import org.adridadou.exception.EthereumApiException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Last fully processed block per named consumer, kept in a memory-mapped file. A checkpoint is a write to the mapped
+ * page, the file is forced to disk every flush interval, so a crash loses at most the checkpoints of one interval and
+ * the consumer processes those blocks again.
+ * Each consumer takes a fixed slot: the length of its name on 2 bytes, the name, and the block number in the last
+ * 8 bytes of the slot. A file whose slots do not follow that layout is rejected rather than partly read.
+ */
+public class CheckpointStore implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointStore.class);
+    private static final int SLOT_SIZE = 128;
+    private static final int BLOCK_OFFSET = SLOT_SIZE - Long.BYTES;
+    private static final int MAX_NAME_SIZE = BLOCK_OFFSET - Short.BYTES;
+    private static final int DEFAULT_CAPACITY = 1024;
+    private static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final Map<String, Integer> slots = new HashMap<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "checkpoint-flush");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private boolean dirty;
+
+    public CheckpointStore(File file) {
+        this(file, DEFAULT_CAPACITY, DEFAULT_FLUSH_INTERVAL);
+    }
+
+    public CheckpointStore(File file, int capacity, long flushIntervalMillis) {
+        try {
+            this.file = new RandomAccessFile(file, "rw");
+            long size = Math.max(this.file.length(), (long) capacity * SLOT_SIZE);
+            this.buffer = this.file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        } catch (IOException e) {
+            throw new EthereumApiException("error while opening the checkpoint store " + file.getAbsolutePath(), e);
+        }
+        try {
+            load();
+        } catch (EthereumApiException e) {
+            closeQuietly();
+            throw new EthereumApiException("the checkpoint store " + file.getAbsolutePath() + " is corrupt", e);
+        }
+        scheduler.scheduleWithFixedDelay(this::flush, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    public synchronized Optional<Long> get(String consumer) {
+        return Optional.ofNullable(slots.get(consumer)).map(offset -> buffer.getLong(offset + BLOCK_OFFSET));
+    }
+
+    public synchronized void checkpoint(String consumer, long blockNumber) {
+        Integer offset = slots.get(consumer);
+        if (offset == null) {
+            offset = allocate(consumer);
+        }
+        buffer.putLong(offset + BLOCK_OFFSET, blockNumber);
+        dirty = true;
+    }
+
+    public void flush() {
+        synchronized (this) {
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+        }
+        try {
+            buffer.force();
+        } catch (RuntimeException e) {
+            log.warn("error while flushing the checkpoints", e);
+            synchronized (this) {
+                dirty = true;
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        flush();
+        file.close();
+    }
+
+    // the slots are allocated one after the other, a valid file is a run of complete slots followed by empty ones
+    private void load() {
+        boolean ended = false;
+        for (int offset = 0; offset + SLOT_SIZE <= buffer.capacity(); offset += SLOT_SIZE) {
+            int nameSize = buffer.getShort(offset);
+            if (nameSize == 0) {
+                ended = true;
+                continue;
+            }
+            if (ended) {
+                throw new EthereumApiException("slot at " + offset + " follows an empty slot");
+            }
+            if (nameSize < 0 || nameSize > MAX_NAME_SIZE) {
+                throw new EthereumApiException("slot at " + offset + " has a name of " + nameSize + " bytes");
+            }
+            byte[] name = new byte[nameSize];
+            for (int i = 0; i < nameSize; i++) {
+                name[i] = buffer.get(offset + Short.BYTES + i);
+            }
+            if (slots.put(new String(name, EthereumFacade.CHARSET), offset) != null) {
+                throw new EthereumApiException("slot at " + offset + " repeats the name of another one");
+            }
+        }
+    }
+
+    private void closeQuietly() {
+        scheduler.shutdown();
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.warn("error while closing the checkpoint store", e);
+        }
+    }
+
+    private int allocate(String consumer) {
+        byte[] name = consumer.getBytes(EthereumFacade.CHARSET);
+        if (name.length == 0 || name.length > MAX_NAME_SIZE) {
+            throw new EthereumApiException("a consumer name takes 1 to " + MAX_NAME_SIZE + " bytes, got " + name.length);
+        }
+        int offset = slots.size() * SLOT_SIZE;
+        if (offset + SLOT_SIZE > buffer.capacity()) {
+            throw new EthereumApiException("the checkpoint store is full, " + slots.size() + " consumers");
+        }
+        for (int i = 0; i < name.length; i++) {
+            buffer.put(offset + Short.BYTES + i, name[i]);
+        }
+        buffer.putLong(offset + BLOCK_OFFSET, -1);
+        // the name length goes last, a slot with a length is complete
+        buffer.putShort(offset, (short) name.length);
+        slots.put(consumer, offset);
+        return offset;
+    }
+}
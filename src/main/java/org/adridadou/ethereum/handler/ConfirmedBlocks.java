@@ -0,0 +1,207 @@
+package org.adridadou.ethereum.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import rx.Observable;
+import rx.subscriptions.Subscriptions;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Holds the blocks back until they are confirmations deep. The recent blocks are kept in a fixed window indexed by
+ * block number, with their hashes, so a block that does not extend the known chain reveals a reorg: the replaced
+ * blocks are dropped, or retracted if they were already confirmed, and the new branch is read back to the common
+ * ancestor. Reorgs deeper than the window cannot be seen.
+ * The blocks are read by number each time the chain head moves up, every number once, so a reorg is seen with the
+ * first block above the previous head. The reads never block the thread importing the blocks.
+ */
+public class ConfirmedBlocks {
+    private static final Logger log = LoggerFactory.getLogger(ConfirmedBlocks.class);
+    private static final CompletableFuture<Void> DONE = CompletableFuture.completedFuture(null);
+
+    private final int confirmations;
+    private final LongFunction<CompletableFuture<OnBlockParameters>> blocks;
+    private final ChainHead head;
+    private final long[] numbers;
+    private final OnBlockParameters[] window;
+    private final boolean[] confirmed;
+    private final AbstractHandler<BlockConfirmation> handler = new AbstractHandler<>();
+    private final Observable<BlockConfirmation> observable;
+    private int subscribers;
+    private int generation;
+    private long nextToRead;
+    private long top = -1;
+    private long nextToConfirm = -1;
+
+    public ConfirmedBlocks(int confirmations, int windowSize, LongFunction<CompletableFuture<OnBlockParameters>> blocks, ChainHead head) {
+        if (windowSize <= confirmations) {
+            throw new IllegalArgumentException("the window has to be larger than the confirmation depth");
+        }
+        this.confirmations = confirmations;
+        this.blocks = blocks;
+        this.head = head;
+        this.numbers = new long[windowSize];
+        this.window = new OnBlockParameters[windowSize];
+        this.confirmed = new boolean[windowSize];
+        Arrays.fill(numbers, -1);
+        this.observable = Observable.create(subscriber -> {
+            handler.call(subscriber);
+            subscribed();
+            subscriber.add(Subscriptions.create(this::unsubscribed));
+        });
+    }
+
+    /**
+     * The chain is followed while this has subscribers, from the block after the head at the first of them.
+     */
+    public Observable<BlockConfirmation> observable() {
+        return observable;
+    }
+
+    private synchronized void subscribed() {
+        if (subscribers++ == 0) {
+            nextToRead = head.getHeight() + 1;
+            follow(generation, nextToRead);
+        }
+    }
+
+    private synchronized void unsubscribed() {
+        if (--subscribers == 0) {
+            // whatever is still being read belongs to the previous generation and is ignored
+            generation++;
+            top = -1;
+            nextToConfirm = -1;
+            Arrays.fill(numbers, -1);
+            Arrays.fill(window, null);
+            Arrays.fill(confirmed, false);
+        }
+    }
+
+    // a block that cannot be read is tried again once the head moves past the height it was missing at
+    private void follow(int current, long height) {
+        head.waitFor(height)
+                .thenCompose(reached -> read(current, reached).thenApply(done -> reached))
+                .whenComplete((reached, e) -> {
+                    if (e != null) {
+                        log.warn("error while following the chain head", e);
+                    }
+                    synchronized (this) {
+                        if (current == generation) {
+                            follow(current, Math.max(nextToRead, (reached == null ? height : reached) + 1));
+                        }
+                    }
+                });
+    }
+
+    private synchronized CompletableFuture<Void> read(int current, long height) {
+        if (current != generation || nextToRead > height) {
+            return DONE;
+        }
+        long number = nextToRead;
+        return blocks.apply(number)
+                .thenCompose(params -> insert(current, params))
+                .thenCompose(done -> {
+                    synchronized (this) {
+                        if (current != generation) {
+                            return DONE;
+                        }
+                        nextToRead = number + 1;
+                    }
+                    return read(current, height);
+                })
+                .exceptionally(e -> {
+                    log.warn("error while reading block " + number, e);
+                    return null;
+                });
+    }
+
+    private synchronized CompletableFuture<Void> insert(int current, OnBlockParameters params) {
+        if (current != generation) {
+            return DONE;
+        }
+        long number = params.block.getNumber();
+        if (nextToConfirm < 0) {
+            nextToConfirm = number;
+        }
+        // whatever was above this block belongs to the branch it replaces
+        for (long above = top; above >= number && above > top - numbers.length; above--) {
+            remove(above);
+        }
+        long lowest = top - numbers.length + 1;
+        return reconnect(current, number - 1, lowest, params.block.getParentHash()).thenAccept(done -> confirm(current, params));
+    }
+
+    private synchronized void confirm(int current, OnBlockParameters params) {
+        if (current != generation) {
+            return;
+        }
+        put(params);
+        top = params.block.getNumber();
+        for (; nextToConfirm <= top - confirmations; nextToConfirm++) {
+            int slot = slot(nextToConfirm);
+            if (numbers[slot] == nextToConfirm && !confirmed[slot]) {
+                confirmed[slot] = true;
+                handler.newBlock(new BlockConfirmation(window[slot], false));
+            }
+        }
+    }
+
+    // walks down while the stored blocks are not the parents the new branch expects, replacing them
+    private synchronized CompletableFuture<Void> reconnect(int current, long number, long lowest, byte[] expected) {
+        if (current != generation || number < 0 || number < lowest) {
+            return DONE;
+        }
+        int slot = slot(number);
+        if (numbers[slot] != number || Arrays.equals(window[slot].block.getHash(), expected)) {
+            return DONE;
+        }
+        log.info("reorg detected at block " + number);
+        remove(number);
+        return blocks.apply(number)
+                .thenCompose(replacement -> replace(current, replacement, lowest))
+                .exceptionally(e -> {
+                    log.warn("error while reading block " + number + " of the new branch", e);
+                    return null;
+                });
+    }
+
+    private synchronized CompletableFuture<Void> replace(int current, OnBlockParameters replacement, long lowest) {
+        if (current != generation) {
+            return DONE;
+        }
+        put(replacement);
+        return reconnect(current, replacement.block.getNumber() - 1, lowest, replacement.block.getParentHash());
+    }
+
+    private void put(OnBlockParameters params) {
+        long number = params.block.getNumber();
+        int slot = slot(number);
+        numbers[slot] = number;
+        window[slot] = params;
+        confirmed[slot] = false;
+        if (number < nextToConfirm) {
+            nextToConfirm = number;
+        }
+    }
+
+    private void remove(long number) {
+        int slot = slot(number);
+        if (numbers[slot] != number) {
+            return;
+        }
+        if (confirmed[slot]) {
+            handler.newBlock(new BlockConfirmation(window[slot], true));
+        }
+        numbers[slot] = -1;
+        window[slot] = null;
+        confirmed[slot] = false;
+    }
+
+    private int slot(long number) {
+        return (int) (number % numbers.length);
+    }
+}
@@ -0,0 +1,226 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.exception.EthereumApiException;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.CallTransaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.solidity.SolidityType;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import rx.Observable;
+import rx.subscriptions.Subscriptions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Routes the logs of each new block to the subscribers of the matching contract event. The routes are keyed by
+ * contract address and topic0, so a log costs one lookup whatever the number of subscriptions, and it is decoded
+ * once for all the subscribers of its event.
+ * Blocks and receipts are first tested against the blooms of the watched (address, topic0) pairs, so only those that
+ * may hold a watched log are looked into.
+ */
+public class ContractEventRouter {
+    private final Map<Key, Route> routes = new ConcurrentHashMap<>();
+    private volatile Bloom watched = new Bloom();
+
+    public ContractEventRouter(Observable<OnBlockParameters> blocks) {
+        blocks.subscribe(this::onBlock);
+    }
+
+    /**
+     * The decoded values of the event, in the order of its inputs. Indexed values of a dynamic type are only logged
+     * as their hash, they come as the 32 bytes of the topic.
+     */
+    public Observable<Object[]> observe(EthAddress address, List<CallTransaction.Function> abi, String eventName) {
+        CallTransaction.Function event = findEvent(address, abi, eventName);
+        Key key = new Key(address.address, event.encodeSignatureLong());
+        return Observable.create(subscriber -> {
+            Route route = acquire(key, event);
+            subscriber.add(Subscriptions.create(() -> release(key, route)));
+            route.handler.call(subscriber);
+        });
+    }
+
+    int getRouteCount() {
+        return routes.size();
+    }
+
+    private synchronized Route acquire(Key key, CallTransaction.Function event) {
+        Route route = routes.get(key);
+        if (route == null) {
+            route = new Route(event, key);
+            routes.put(key, route);
+            updateWatched();
+        }
+        route.subscribers++;
+        return route;
+    }
+
+    // the route goes away with its last subscriber, so its pair stops letting blocks through the bloom
+    private synchronized void release(Key key, Route route) {
+        if (--route.subscribers == 0 && routes.remove(key, route)) {
+            updateWatched();
+        }
+    }
+
+    private void updateWatched() {
+        Bloom union = new Bloom();
+        routes.values().forEach(value -> union.or(value.bloom));
+        watched = union;
+    }
+
+    /**
+     * Same as {@link #observe(EthAddress, List, String)} over another stream of blocks, a replay for instance. The
+     * logs are decoded for this subscription only.
+     */
+    public Observable<Object[]> observe(Observable<OnBlockParameters> blocks, EthAddress address, List<CallTransaction.Function> abi, String eventName) {
+        CallTransaction.Function event = findEvent(address, abi, eventName);
+        Key key = new Key(address.address, event.encodeSignatureLong());
+        Route route = new Route(event, key);
+        return blocks.concatMap(params -> {
+            List<Object[]> values = new ArrayList<>();
+            if (new Bloom(params.block.getLogBloom()).matches(route.bloom) || params.block.getLogBloom().length == 0) {
+                for (TransactionReceipt receipt : params.receipts) {
+                    for (LogInfo log : receipt.getLogInfoList()) {
+                        if (!log.getTopics().isEmpty() && key.equals(new Key(log.getAddress(), log.getTopics().get(0).getData()))) {
+                            values.add(decode(event, log));
+                        }
+                    }
+                }
+            }
+            return Observable.from(values);
+        });
+    }
+
+    private static CallTransaction.Function findEvent(EthAddress address, List<CallTransaction.Function> abi, String eventName) {
+        CallTransaction.Function event = abi.stream()
+                .filter(func -> func.type == CallTransaction.FunctionType.event && func.name.equals(eventName))
+                .findFirst()
+                .orElseThrow(() -> new EthereumApiException("event " + eventName + " cannot be found on " + address.withLeading0x()));
+        if (event.anonymous) {
+            throw new EthereumApiException("anonymous event " + eventName + " has no topic to subscribe to");
+        }
+        return event;
+    }
+
+    private void onBlock(OnBlockParameters params) {
+        Bloom blockBloom = new Bloom(params.block.getLogBloom());
+        if (!overlaps(blockBloom, watched)) {
+            return;
+        }
+        List<Route> candidates = new ArrayList<>();
+        boolean hasBloom = blockBloom.getData().length == watched.getData().length;
+        for (Route route : routes.values()) {
+            if (!hasBloom || blockBloom.matches(route.bloom)) {
+                candidates.add(route);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return;
+        }
+        for (TransactionReceipt receipt : params.receipts) {
+            if (!mayMatch(receipt.getBloomFilter(), candidates)) {
+                continue;
+            }
+            for (LogInfo log : receipt.getLogInfoList()) {
+                if (log.getTopics().isEmpty()) {
+                    continue;
+                }
+                Route route = routes.get(new Key(log.getAddress(), log.getTopics().get(0).getData()));
+                if (route != null && route.handler.getSubscriberCount() > 0) {
+                    route.handler.newBlock(decode(route.event, log));
+                }
+            }
+        }
+    }
+
+    private static boolean mayMatch(Bloom bloom, List<Route> candidates) {
+        for (Route route : candidates) {
+            if (bloom.matches(route.bloom)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // cheap first pass, a block sharing no bit with any watched pair cannot hold one of their logs
+    private static boolean overlaps(Bloom a, Bloom b) {
+        byte[] left = a.getData();
+        byte[] right = b.getData();
+        if (left.length != right.length) {
+            // no bloom to go by, the block is looked into
+            return true;
+        }
+        for (int i = 0; i < left.length; i++) {
+            if ((left[i] & right[i]) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Object[] decode(CallTransaction.Function event, LogInfo log) {
+        Object[] values = new Object[event.inputs.length];
+        List<DataWord> topics = log.getTopics();
+        byte[] data = log.getData();
+        int topic = 1;
+        int offset = 0;
+        for (int i = 0; i < event.inputs.length; i++) {
+            CallTransaction.Param param = event.inputs[i];
+            if (Boolean.TRUE.equals(param.indexed)) {
+                byte[] word = topics.get(topic++).getData();
+                values[i] = param.type.isDynamicType() ? word : param.type.decode(word, 0);
+            } else {
+                values[i] = param.type.isDynamicType()
+                        ? param.type.decode(data, SolidityType.IntType.decodeInt(data, offset).intValue())
+                        : param.type.decode(data, offset);
+                offset += param.type.getFixedSize();
+            }
+        }
+        return values;
+    }
+
+    private static class Route {
+        private final CallTransaction.Function event;
+        private final AbstractHandler<Object[]> handler = new AbstractHandler<>();
+        private final Bloom bloom;
+        private int subscribers;
+
+        private Route(CallTransaction.Function event, Key key) {
+            this.event = event;
+            this.bloom = Bloom.create(HashUtil.sha3(key.address));
+            this.bloom.or(Bloom.create(HashUtil.sha3(key.topic)));
+        }
+    }
+
+    private static class Key {
+        private final byte[] address;
+        private final byte[] topic;
+
+        private Key(byte[] address, byte[] topic) {
+            this.address = address;
+            this.topic = topic;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return Arrays.equals(address, key.address) && Arrays.equals(topic, key.topic);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(address) + Arrays.hashCode(topic);
+        }
+    }
+}
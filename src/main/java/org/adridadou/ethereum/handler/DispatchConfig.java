@@ -0,0 +1,34 @@
+package org.adridadou.ethereum.handler;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * By default a full buffer makes the publisher wait, so every event is delivered. Dropping or coalescing events has to
+ * be asked for with {@link #overflowPolicy(OverflowPolicy)}.
+ */
+public class DispatchConfig {
+    private int bufferSize = 4096;
+    private OverflowPolicy overflowPolicy = OverflowPolicy.BLOCK;
+
+    public DispatchConfig bufferSize(final int events) {
+        this.bufferSize = events;
+        return this;
+    }
+
+    public DispatchConfig overflowPolicy(final OverflowPolicy policy) {
+        this.overflowPolicy = policy;
+        return this;
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    public static DispatchConfig config() {
+        return new DispatchConfig();
+    }
+}
@@ -18,31 +18,55 @@ import rx.Observable;
  */
 public class EthereumEventHandler extends EthereumListenerAdapter {
     private final CompletableFuture<Boolean> ready = new CompletableFuture<>();
+    private final EventDispatcher dispatcher;
     private final OnBlockHandler onBlockHandler;
     private final OnTransactionHandler onTransactionHandler;
-    private long currentBlockNumber;
+    private final ChainHead chainHead;
 
     public EthereumEventHandler(Ethereum ethereum, OnBlockHandler onBlockHandler, OnTransactionHandler onTransactionHandler) {
+        this(ethereum, onBlockHandler, onTransactionHandler, DispatchConfig.config());
+    }
+
+    public EthereumEventHandler(Ethereum ethereum, OnBlockHandler onBlockHandler, OnTransactionHandler onTransactionHandler, DispatchConfig dispatchConfig) {
+        this(ethereum.getBlockchain().getBestBlock().getNumber(), onBlockHandler, onTransactionHandler, dispatchConfig);
         ethereum.addListener(this);
+    }
+
+    /**
+     * For the backends without an embedded node, whoever follows the chain calls the listener methods itself.
+     */
+    public EthereumEventHandler(long currentBlockNumber, OnBlockHandler onBlockHandler, OnTransactionHandler onTransactionHandler) {
+        this(currentBlockNumber, onBlockHandler, onTransactionHandler, DispatchConfig.config());
+    }
+
+    public EthereumEventHandler(long currentBlockNumber, OnBlockHandler onBlockHandler, OnTransactionHandler onTransactionHandler, DispatchConfig dispatchConfig) {
         this.onBlockHandler = onBlockHandler;
         this.onTransactionHandler = onTransactionHandler;
-        currentBlockNumber = ethereum.getBlockchain().getBestBlock().getNumber();
+        this.chainHead = new ChainHead(currentBlockNumber);
+        this.dispatcher = new EventDispatcher(onBlockHandler, onTransactionHandler, dispatchConfig);
     }
 
     @Override
     public void onBlock(Block block, List<TransactionReceipt> receipts) {
-        onBlockHandler.newBlock(new OnBlockParameters(block, receipts));
-        currentBlockNumber = block.getNumber();
+        dispatcher.publish(new OnBlockParameters(block, receipts));
+        chainHead.update(block.getNumber());
     }
 
     @Override
     public void onPendingTransactionUpdate(TransactionReceipt txReceipt, PendingTransactionState state, Block block) {
-        onTransactionHandler.onTransaction(new OnTransactionParameters(txReceipt.getTransaction(), state));
+        dispatcher.publish(new OnTransactionParameters(txReceipt.getTransaction(), state));
     }
 
     @Override
     public void onTransactionExecuted(TransactionExecutionSummary summary) {
-        onTransactionHandler.onTransaction(new OnTransactionParameters(summary.getTransaction(), PendingTransactionState.INCLUDED));
+        dispatcher.publish(new OnTransactionParameters(summary.getTransaction(), PendingTransactionState.INCLUDED));
+    }
+
+    /**
+     * Lag and drop counters of the delivery to the subscribers.
+     */
+    public EventDispatcher getDispatcher() {
+        return dispatcher;
     }
 
     public TransactionReceipt checkForErrors(final TransactionReceipt receipt) {
@@ -63,7 +87,11 @@ public class EthereumEventHandler extends EthereumListenerAdapter {
     }
 
     public long getCurrentBlockNumber() {
-        return currentBlockNumber;
+        return chainHead.getHeight();
+    }
+
+    public ChainHead getChainHead() {
+        return chainHead;
     }
 
     public Observable<OnBlockParameters> observeBlocks() {
@@ -74,4 +102,11 @@ public class EthereumEventHandler extends EthereumListenerAdapter {
         return onTransactionHandler.observable;
     }
 
+    /**
+     * Only the transactions matching the filter, routed by address instead of being filtered by each subscriber.
+     */
+    public Observable<OnTransactionParameters> observeTransactions(TransactionFilter filter) {
+        return onTransactionHandler.observable(filter);
+    }
+
 }
@@ -0,0 +1,200 @@
+package org.adridadou.ethereum.handler;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Moves the delivery of the events off the thread that publishes them. Events go into a bounded ring buffer that one
+ * consumer thread drains in order, and a full buffer is handled by the {@link OverflowPolicy}, so only BLOCK lets a
+ * slow subscriber hold the node back.
+ */
+public class EventDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(EventDispatcher.class);
+
+    private final OnBlockHandler onBlockHandler;
+    private final OnTransactionHandler onTransactionHandler;
+    private final OverflowPolicy overflowPolicy;
+    private final Object[] events;
+    private final long[] queuedAt;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final AtomicLong delivered = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private int head;
+    private int size;
+
+    public EventDispatcher(OnBlockHandler onBlockHandler, OnTransactionHandler onTransactionHandler, DispatchConfig config) {
+        this.onBlockHandler = onBlockHandler;
+        this.onTransactionHandler = onTransactionHandler;
+        this.overflowPolicy = config.getOverflowPolicy();
+        this.events = new Object[config.getBufferSize()];
+        this.queuedAt = new long[config.getBufferSize()];
+        Thread consumer = new Thread(this::consume, "ethereum-events");
+        consumer.setDaemon(true);
+        consumer.start();
+    }
+
+    public void publish(final OnBlockParameters event) {
+        enqueue(event);
+    }
+
+    public void publish(final OnTransactionParameters event) {
+        enqueue(event);
+    }
+
+    public int getQueuedEvents() {
+        lock.lock();
+        try {
+            return size;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * How long the oldest queued event has been waiting, 0 when the subscribers are up to date.
+     */
+    public long getLagMillis() {
+        lock.lock();
+        try {
+            return size == 0 ? 0 : System.currentTimeMillis() - queuedAt[head];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getDeliveredEvents() {
+        return delivered.get();
+    }
+
+    public long getDroppedEvents() {
+        return dropped.get();
+    }
+
+    public long getCoalescedBlocks() {
+        return coalesced.get();
+    }
+
+    private void enqueue(final Object event) {
+        lock.lock();
+        try {
+            if (size == events.length && !makeRoom(event instanceof OnBlockParameters)) {
+                dropped.incrementAndGet();
+                return;
+            }
+            int tail = (head + size) % events.length;
+            events[tail] = event;
+            queuedAt[tail] = System.currentTimeMillis();
+            size++;
+            notEmpty.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // called with the lock held and a full buffer, false if the event has to be dropped
+    private boolean makeRoom(final boolean block) {
+        switch (overflowPolicy) {
+            case BLOCK:
+                try {
+                    while (size == events.length) {
+                        notFull.await();
+                    }
+                    return true;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return false;
+                }
+            case COALESCE_BLOCKS:
+                // a new block makes every queued one obsolete, a transaction keeps the newest block queued
+                int removed = removeBlocks(!block);
+                if (removed > 0) {
+                    coalesced.addAndGet(removed);
+                    return true;
+                }
+                dropOldest();
+                return true;
+            default:
+                dropOldest();
+                return true;
+        }
+    }
+
+    private void dropOldest() {
+        events[head] = null;
+        head = (head + 1) % events.length;
+        size--;
+        dropped.incrementAndGet();
+    }
+
+    private int removeBlocks(final boolean keepNewest) {
+        int newest = -1;
+        if (keepNewest) {
+            for (int i = size - 1; i >= 0 && newest < 0; i--) {
+                if (events[(head + i) % events.length] instanceof OnBlockParameters) {
+                    newest = i;
+                }
+            }
+        }
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            int from = (head + i) % events.length;
+            Object event = events[from];
+            if (!(event instanceof OnBlockParameters) || i == newest) {
+                int to = (head + kept) % events.length;
+                events[to] = event;
+                queuedAt[to] = queuedAt[from];
+                kept++;
+            }
+        }
+        for (int i = kept; i < size; i++) {
+            events[(head + i) % events.length] = null;
+        }
+        int removed = size - kept;
+        size = kept;
+        return removed;
+    }
+
+    private void consume() {
+        while (!Thread.currentThread().isInterrupted()) {
+            Object event;
+            lock.lock();
+            try {
+                while (size == 0) {
+                    notEmpty.await();
+                }
+                event = events[head];
+                events[head] = null;
+                head = (head + 1) % events.length;
+                size--;
+                notFull.signal();
+            } catch (InterruptedException e) {
+                return;
+            } finally {
+                lock.unlock();
+            }
+            deliver(event);
+        }
+    }
+
+    private void deliver(final Object event) {
+        try {
+            if (event instanceof OnBlockParameters) {
+                onBlockHandler.newBlock((OnBlockParameters) event);
+            } else {
+                onTransactionHandler.onTransaction((OnTransactionParameters) event);
+            }
+        } catch (RuntimeException e) {
+            log.warn("a subscriber failed while handling " + event, e);
+        }
+        delivered.incrementAndGet();
+    }
+}
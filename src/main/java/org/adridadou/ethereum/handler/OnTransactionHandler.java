@@ -1,5 +1,117 @@
 package org.adridadou.ethereum.handler;
 
+import org.adridadou.ethereum.values.EthAddress;
+import org.ethereum.core.Transaction;
+import org.ethereum.db.ByteArrayWrapper;
+import rx.Observable;
+import rx.Subscriber;
+import rx.subscriptions.Subscriptions;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Filtered subscriptions are indexed by sender, or else by receiver or contract, so a transaction only reaches the
+ * subscriptions of its addresses. Subscriptions filtering on the state only are checked for every transaction.
+ */
 public class OnTransactionHandler extends AbstractHandler<OnTransactionParameters> {
+    private static final Route[] NO_ROUTES = new Route[0];
+
+    private final Map<ByteArrayWrapper, Route[]> bySender = new ConcurrentHashMap<>();
+    private final Map<ByteArrayWrapper, Route[]> byTarget = new ConcurrentHashMap<>();
+    private volatile Route[] unindexed = NO_ROUTES;
+
+    public Observable<OnTransactionParameters> observable(final TransactionFilter filter) {
+        return Observable.create(subscriber -> {
+            Route route = new Route(filter, subscriber);
+            add(route);
+            subscriber.add(Subscriptions.create(() -> remove(route)));
+        });
+    }
+
+    @Override
+    public void onTransaction(final OnTransactionParameters param) {
+        super.onTransaction(param);
+        Transaction tx = param.transaction;
+        // recovering the sender costs a signature recovery, it is only done when someone filters on it
+        if (!bySender.isEmpty()) {
+            deliver(bySender, tx.getSender(), param);
+        }
+        if (!byTarget.isEmpty()) {
+            deliver(byTarget, tx.isContractCreation() ? tx.getContractAddress() : tx.getReceiveAddress(), param);
+        }
+        deliver(unindexed, param);
+    }
+
+    private void deliver(final Map<ByteArrayWrapper, Route[]> index, final byte[] address, final OnTransactionParameters param) {
+        if (address != null) {
+            Route[] routes = index.get(new ByteArrayWrapper(address));
+            if (routes != null) {
+                deliver(routes, param);
+            }
+        }
+    }
+
+    private void deliver(final Route[] routes, final OnTransactionParameters param) {
+        for (Route route : routes) {
+            if (!route.subscriber.isUnsubscribed() && route.filter.matches(param)) {
+                route.subscriber.onNext(param);
+            }
+        }
+    }
+
+    private synchronized void add(final Route route) {
+        ByteArrayWrapper key = key(route.filter);
+        if (key == null) {
+            unindexed = append(unindexed, route);
+        } else {
+            index(route.filter).merge(key, new Route[]{route}, OnTransactionHandler::append);
+        }
+    }
+
+    private synchronized void remove(final Route route) {
+        ByteArrayWrapper key = key(route.filter);
+        if (key == null) {
+            unindexed = without(unindexed, route);
+        } else {
+            index(route.filter).computeIfPresent(key, (k, routes) -> {
+                Route[] remaining = without(routes, route);
+                return remaining.length == 0 ? null : remaining;
+            });
+        }
+    }
+
+    private Map<ByteArrayWrapper, Route[]> index(final TransactionFilter filter) {
+        return filter.getFrom().isPresent() ? bySender : byTarget;
+    }
+
+    private static ByteArrayWrapper key(final TransactionFilter filter) {
+        EthAddress address = filter.getFrom().orElseGet(() -> filter.getTo().orElseGet(() -> filter.getContract().orElse(null)));
+        return address == null ? null : new ByteArrayWrapper(address.address);
+    }
+
+    private static Route[] append(final Route[] routes, final Route[] added) {
+        Route[] result = Arrays.copyOf(routes, routes.length + added.length);
+        System.arraycopy(added, 0, result, routes.length, added.length);
+        return result;
+    }
+
+    private static Route[] append(final Route[] routes, final Route added) {
+        return append(routes, new Route[]{added});
+    }
+
+    private static Route[] without(final Route[] routes, final Route removed) {
+        return Arrays.stream(routes).filter(route -> route != removed).toArray(Route[]::new);
+    }
+
+    private static class Route {
+        private final TransactionFilter filter;
+        private final Subscriber<? super OnTransactionParameters> subscriber;
 
+        private Route(TransactionFilter filter, Subscriber<? super OnTransactionParameters> subscriber) {
+            this.filter = filter;
+            this.subscriber = subscriber;
+        }
+    }
 }
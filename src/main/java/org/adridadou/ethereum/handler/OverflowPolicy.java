@@ -0,0 +1,22 @@
+package org.adridadou.ethereum.handler;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * What the event dispatcher does with a new event when its buffer is full.
+ */
+public enum OverflowPolicy {
+    /**
+     * The publishing thread waits for room, nothing is lost but a slow subscriber slows the node down.
+     */
+    BLOCK,
+    /**
+     * The oldest queued event is dropped.
+     */
+    DROP_OLDEST,
+    /**
+     * The queued blocks are replaced by the new one, so subscribers skip to the latest block. Transaction events are
+     * dropped oldest first once no block is left to coalesce.
+     */
+    COALESCE_BLOCKS
+}
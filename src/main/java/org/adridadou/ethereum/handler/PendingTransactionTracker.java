@@ -0,0 +1,123 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.ethereum.values.EthData;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.listener.EthereumListener.PendingTransactionState;
+import rx.Observable;
+import rx.Subscription;
+
+import java.io.Closeable;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Latest state of the recent transactions, with a change stream that publishes each state of a transaction once
+ * however many times the node reports it. A transaction is forgotten once it has been included or dropped for
+ * confirmations blocks, or when more than maxTransactions are tracked, oldest first. The tracker follows the events
+ * until it is closed.
+ */
+public class PendingTransactionTracker implements Closeable {
+    private final int confirmations;
+    private final Map<ByteArrayWrapper, Entry> transactions;
+    private final Deque<Settled> settled = new ArrayDeque<>();
+    private final AbstractHandler<OnTransactionParameters> changes = new AbstractHandler<>();
+    private final ChainHead chainHead;
+    private final Subscription transactionUpdates;
+    private final Subscription blockUpdates;
+
+    public PendingTransactionTracker(EthereumEventHandler events, int maxTransactions, int confirmations) {
+        this.confirmations = confirmations;
+        this.chainHead = events.getChainHead();
+        this.transactions = Collections.synchronizedMap(new LinkedHashMap<ByteArrayWrapper, Entry>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ByteArrayWrapper, Entry> eldest) {
+                return size() > maxTransactions;
+            }
+        });
+        this.transactionUpdates = events.observeTransactions().subscribe(this::onTransaction);
+        this.blockUpdates = events.observeBlocks().subscribe(this::onBlock);
+    }
+
+    public Optional<PendingTransactionState> getState(EthData transactionHash) {
+        return Optional.ofNullable(transactions.get(new ByteArrayWrapper(transactionHash.data))).map(entry -> entry.state);
+    }
+
+    public int size() {
+        return transactions.size();
+    }
+
+    public Observable<OnTransactionParameters> observeChanges() {
+        return changes.observable;
+    }
+
+    @Override
+    public void close() {
+        transactionUpdates.unsubscribe();
+        blockUpdates.unsubscribe();
+    }
+
+    private void onTransaction(OnTransactionParameters params) {
+        ByteArrayWrapper hash = new ByteArrayWrapper(params.transaction.getHash());
+        boolean changed;
+        boolean settling;
+        long height = chainHead.getHeight();
+        synchronized (transactions) {
+            Entry entry = transactions.computeIfAbsent(hash, key -> new Entry());
+            // a transaction included again after a reorg has to settle again, even though that state was published
+            settling = isSettled(params.state) && entry.state != params.state;
+            if (settling) {
+                entry.settledAt = height;
+            }
+            entry.state = params.state;
+            int bit = 1 << params.state.ordinal();
+            changed = (entry.published & bit) == 0;
+            entry.published |= bit;
+        }
+        if (settling) {
+            synchronized (settled) {
+                settled.add(new Settled(hash, height));
+            }
+        }
+        if (changed) {
+            changes.onTransaction(params);
+        }
+    }
+
+    private void onBlock(OnBlockParameters params) {
+        long currentBlock = params.block.getNumber();
+        synchronized (settled) {
+            while (!settled.isEmpty() && settled.peek().blockNumber <= currentBlock - confirmations) {
+                Settled oldest = settled.poll();
+                // an older record of a transaction that settled again later does not evict it
+                transactions.computeIfPresent(oldest.hash, (key, entry) ->
+                        isSettled(entry.state) && entry.settledAt <= currentBlock - confirmations ? null : entry);
+            }
+        }
+    }
+
+    private static boolean isSettled(PendingTransactionState state) {
+        return state == PendingTransactionState.INCLUDED || state == PendingTransactionState.DROPPED;
+    }
+
+    private static class Entry {
+        private PendingTransactionState state;
+        private int published;
+        private long settledAt;
+    }
+
+    private static class Settled {
+        private final ByteArrayWrapper hash;
+        private final long blockNumber;
+
+        private Settled(ByteArrayWrapper hash, long blockNumber) {
+            this.hash = hash;
+            this.blockNumber = blockNumber;
+        }
+    }
+}
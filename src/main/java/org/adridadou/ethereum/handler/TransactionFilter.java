@@ -0,0 +1,69 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.ethereum.values.EthAddress;
+import org.ethereum.core.Transaction;
+import org.ethereum.listener.EthereumListener;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * What a transaction subscription is interested in, every criterion set has to match. contract matches the calls to
+ * the contract as well as its creation.
+ */
+public class TransactionFilter {
+    private EthAddress from;
+    private EthAddress to;
+    private EthAddress contract;
+    private EthereumListener.PendingTransactionState state;
+
+    public TransactionFilter from(final EthAddress sender) {
+        this.from = sender;
+        return this;
+    }
+
+    public TransactionFilter to(final EthAddress receiver) {
+        this.to = receiver;
+        return this;
+    }
+
+    public TransactionFilter contract(final EthAddress address) {
+        this.contract = address;
+        return this;
+    }
+
+    public TransactionFilter state(final EthereumListener.PendingTransactionState state) {
+        this.state = state;
+        return this;
+    }
+
+    public Optional<EthAddress> getFrom() {
+        return Optional.ofNullable(from);
+    }
+
+    public Optional<EthAddress> getTo() {
+        return Optional.ofNullable(to);
+    }
+
+    public Optional<EthAddress> getContract() {
+        return Optional.ofNullable(contract);
+    }
+
+    public Optional<EthereumListener.PendingTransactionState> getState() {
+        return Optional.ofNullable(state);
+    }
+
+    public boolean matches(final OnTransactionParameters params) {
+        Transaction tx = params.transaction;
+        return (state == null || state == params.state)
+                && (from == null || Arrays.equals(from.address, tx.getSender()))
+                && (to == null || Arrays.equals(to.address, tx.getReceiveAddress()))
+                && (contract == null || Arrays.equals(contract.address, tx.isContractCreation() ? tx.getContractAddress() : tx.getReceiveAddress()));
+    }
+
+    public static TransactionFilter filter() {
+        return new TransactionFilter();
+    }
+}
@@ -3,8 +3,13 @@ package org.adridadou.ethereum.provider;
 import org.adridadou.ethereum.blockchain.BlockchainProxyRpc;
 import org.adridadou.ethereum.EthereumFacade;
 import org.adridadou.ethereum.blockchain.Web3JFacade;
-import org.web3j.protocol.Web3j;
-import org.web3j.protocol.http.HttpService;
+import org.adridadou.ethereum.rpc.AdmissionControlService;
+import org.adridadou.ethereum.rpc.BatchingHttpService;
+import org.adridadou.ethereum.rpc.MultiEndpointService;
+import org.adridadou.ethereum.rpc.RpcConfig;
+import org.web3j.protocol.Web3jService;
+
+import java.util.List;
 
 /**
  * Created by davidroon on 27.04.16.
@@ -13,10 +18,27 @@ import org.web3j.protocol.http.HttpService;
 public class RpcEthereumFacadeProvider {
 
     public EthereumFacade create(final String url) {
-        return create(new Web3JFacade(Web3j.build(new HttpService(url))));
+        return create(url, RpcConfig.config());
+    }
+
+    public EthereumFacade create(final String url, final RpcConfig config) {
+        return create(new Web3JFacade(withAdmission(new BatchingHttpService(url, config), config)));
+    }
+
+    public EthereumFacade create(final List<String> urls, final RpcConfig config) {
+        if (urls.size() == 1) {
+            return create(urls.get(0), config);
+        }
+        return create(new Web3JFacade(withAdmission(new MultiEndpointService(urls, config), config)));
     }
 
     public EthereumFacade create(final Web3JFacade web3j) {
         return new EthereumFacade(new BlockchainProxyRpc(web3j));
     }
+
+    private Web3jService withAdmission(final Web3jService service, final RpcConfig config) {
+        return config.getAdmission()
+                .<Web3jService>map(admission -> new AdmissionControlService(service, admission))
+                .orElse(service);
+    }
 }
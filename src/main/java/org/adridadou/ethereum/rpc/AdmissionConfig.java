@@ -0,0 +1,57 @@
+package org.adridadou.ethereum.rpc;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class AdmissionConfig {
+    private int maxInFlight = 64;
+    private int maxQueued = 10_000;
+    private final Map<Priority, Rate> rates = new EnumMap<>(Priority.class);
+
+    public AdmissionConfig maxInFlight(final int requests) {
+        this.maxInFlight = requests;
+        return this;
+    }
+
+    public AdmissionConfig maxQueued(final int requests) {
+        this.maxQueued = requests;
+        return this;
+    }
+
+    /**
+     * Token bucket for one lane: requestsPerSecond on average, bursts of up to burst requests.
+     */
+    public AdmissionConfig rate(final Priority priority, final double requestsPerSecond, final int burst) {
+        rates.put(priority, new Rate(requestsPerSecond, burst));
+        return this;
+    }
+
+    public int getMaxInFlight() {
+        return maxInFlight;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public Map<Priority, Rate> getRates() {
+        return rates;
+    }
+
+    public static AdmissionConfig config() {
+        return new AdmissionConfig();
+    }
+
+    public static class Rate {
+        public final double requestsPerSecond;
+        public final int burst;
+
+        public Rate(double requestsPerSecond, int burst) {
+            this.requestsPerSecond = requestsPerSecond;
+            this.burst = burst;
+        }
+    }
+}
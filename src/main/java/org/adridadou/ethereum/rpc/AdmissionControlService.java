@@ -0,0 +1,261 @@
+package org.adridadou.ethereum.rpc;
+
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Keeps bursts from overloading the node. At most maxInFlight requests reach the wrapped service at a time, the rest
+ * wait in one queue per {@link Priority}. Sends are admitted before chain tracking, and tracking before plain
+ * reads, and each lane can be capped by a token bucket.
+ */
+public class AdmissionControlService implements Web3jService {
+    // waits on the futures of services that don't complete a CompletableFuture, off the common pool
+    private static final ExecutorService waiters = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-admission-response");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final Web3jService service;
+    private final AdmissionConfig config;
+    private final Map<Priority, Queue<Pending<?>>> lanes = new EnumMap<>(Priority.class);
+    private final Map<Priority, TokenBucket> buckets = new EnumMap<>(Priority.class);
+    private final Map<Priority, AtomicLong> admitted = new EnumMap<>(Priority.class);
+    private final Map<Priority, AtomicLong> waited = new EnumMap<>(Priority.class);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-admission");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int inFlight;
+    private int queued;
+    private boolean drainScheduled;
+    private boolean draining;
+
+    public AdmissionControlService(Web3jService service, AdmissionConfig config) {
+        this.service = service;
+        this.config = config;
+        for (Priority priority : Priority.values()) {
+            lanes.put(priority, new ArrayDeque<>());
+            admitted.put(priority, new AtomicLong());
+            waited.put(priority, new AtomicLong());
+            AdmissionConfig.Rate rate = config.getRates().get(priority);
+            if (rate != null) {
+                buckets.put(priority, new TokenBucket(rate.requestsPerSecond, rate.burst));
+            }
+        }
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        try {
+            return sendAsync(request, responseType).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for " + request.getMethod(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("error while sending " + request.getMethod(), e.getCause());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        Pending<T> pending = new Pending<>(request, responseType);
+        synchronized (this) {
+            if (queued >= config.getMaxQueued()) {
+                pending.result.completeExceptionally(new IOException("admission queue full, " + queued + " requests waiting"));
+                return pending.result;
+            }
+            lanes.get(Priority.of(request.getMethod())).add(pending);
+            queued++;
+        }
+        drain();
+        return pending.result;
+    }
+
+    /**
+     * The wrapped service, for the requests that are grouped into one before reaching the node.
+     */
+    public Web3jService getService() {
+        return service;
+    }
+
+    public synchronized int getQueueDepth(Priority priority) {
+        return lanes.get(priority).size();
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public long getAdmitted(Priority priority) {
+        return admitted.get(priority).get();
+    }
+
+    public double getAverageWait(Priority priority) {
+        long count = admitted.get(priority).get();
+        return count == 0 ? 0 : (double) waited.get(priority).get() / count;
+    }
+
+    // a single thread drains at a time, a response completed inline would otherwise drain again one level deeper
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            Pending<?> next = null;
+            Priority lane = null;
+            synchronized (this) {
+                if (inFlight >= config.getMaxInFlight()) {
+                    draining = false;
+                    return;
+                }
+                long retryIn = Long.MAX_VALUE;
+                for (Priority priority : Priority.values()) {
+                    Queue<Pending<?>> queue = lanes.get(priority);
+                    if (queue.isEmpty()) {
+                        continue;
+                    }
+                    TokenBucket bucket = buckets.get(priority);
+                    if (bucket == null || bucket.tryAcquire()) {
+                        next = queue.poll();
+                        lane = priority;
+                        break;
+                    }
+                    retryIn = Math.min(retryIn, bucket.millisUntilNextToken());
+                }
+                if (next == null) {
+                    if (retryIn != Long.MAX_VALUE && !drainScheduled) {
+                        drainScheduled = true;
+                        scheduler.schedule(this::scheduledDrain, Math.max(1, retryIn), TimeUnit.MILLISECONDS);
+                    }
+                    draining = false;
+                    return;
+                }
+                inFlight++;
+                queued--;
+            }
+            admitted.get(lane).incrementAndGet();
+            waited.get(lane).addAndGet(System.currentTimeMillis() - next.queuedAt);
+            dispatch(next);
+        }
+    }
+
+    private void scheduledDrain() {
+        synchronized (this) {
+            drainScheduled = false;
+        }
+        drain();
+    }
+
+    private <T extends Response> void dispatch(Pending<T> pending) {
+        Future<T> future;
+        try {
+            future = service.sendAsync(pending.request, pending.responseType);
+        } catch (RuntimeException e) {
+            future = null;
+            pending.result.completeExceptionally(e);
+        }
+        if (future instanceof CompletableFuture) {
+            ((CompletableFuture<T>) future).whenComplete((response, error) -> {
+                done();
+                if (error != null) {
+                    pending.result.completeExceptionally(error);
+                } else {
+                    pending.result.complete(response);
+                }
+            });
+        } else if (future != null) {
+            Future<T> blocking = future;
+            CompletableFuture.runAsync(() -> {
+                try {
+                    pending.result.complete(blocking.get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    pending.result.completeExceptionally(e);
+                } catch (ExecutionException e) {
+                    pending.result.completeExceptionally(e.getCause());
+                } finally {
+                    done();
+                }
+            }, waiters);
+        } else {
+            done();
+        }
+    }
+
+    private void done() {
+        synchronized (this) {
+            inFlight--;
+        }
+        drain();
+    }
+
+    private static class Pending<T extends Response> {
+        private final Request request;
+        private final Class<T> responseType;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private final long queuedAt = System.currentTimeMillis();
+
+        private Pending(Request request, Class<T> responseType) {
+            this.request = request;
+            this.responseType = responseType;
+        }
+    }
+
+    private static class TokenBucket {
+        private final double tokensPerMilli;
+        private final int burst;
+        private double tokens;
+        private long lastRefill = System.currentTimeMillis();
+
+        private TokenBucket(double requestsPerSecond, int burst) {
+            this.tokensPerMilli = requestsPerSecond / 1000;
+            this.burst = burst;
+            this.tokens = burst;
+        }
+
+        private boolean tryAcquire() {
+            refill();
+            if (tokens >= 1) {
+                tokens--;
+                return true;
+            }
+            return false;
+        }
+
+        private long millisUntilNextToken() {
+            refill();
+            return (long) Math.ceil((1 - tokens) / tokensPerMilli);
+        }
+
+        private void refill() {
+            long now = System.currentTimeMillis();
+            tokens = Math.min(burst, tokens + (now - lastRefill) * tokensPerMilli);
+            lastRefill = now;
+        }
+    }
+}
@@ -0,0 +1,243 @@
+package org.adridadou.ethereum.rpc;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.adridadou.exception.EthereumApiException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.entity.ByteArrayEntity;
+import org.apache.http.entity.ContentType;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Requests sent within the same batch window, or added to the same {@link RpcBatch}, go to the node as a single
+ * JSON-RPC batch array. Each entry is sent with its position in the batch as id, web3j gives the same id to all its
+ * requests, and the responses are matched back by that position.
+ * <p>
+ * The transport is non-blocking: posts go through a pooled keep-alive async client and no thread waits on the
+ * network. Responses are decoded and completed on the callback pool, never on the I/O reactor threads.
+ */
+public class BatchingHttpService implements Web3jService, Closeable {
+    private final String url;
+    private final RpcConfig config;
+    private final CloseableHttpAsyncClient httpClient;
+    private final ObjectMapper objectMapper = new ObjectMapper().configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(daemon("rpc-batch-window"));
+    private final ExecutorService callbacks = Executors.newCachedThreadPool(daemon("rpc-callback"));
+    private final List<RpcCall<?>> window = new ArrayList<>();
+
+    public BatchingHttpService(String url) {
+        this(url, RpcConfig.config());
+    }
+
+    public BatchingHttpService(String url, RpcConfig config) {
+        this.url = url;
+        this.config = config;
+        this.httpClient = createHttpClient(config);
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        try {
+            return sendAsync(request, responseType).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for " + request.getMethod(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("error while sending " + request.getMethod(), e.getCause());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        RpcCall<T> call = new RpcCall<>(request, responseType);
+        List<RpcCall<?>> fullBatch = null;
+        synchronized (window) {
+            window.add(call);
+            if (window.size() >= config.getMaxBatchSize()) {
+                fullBatch = drainWindow();
+            } else if (window.size() == 1) {
+                scheduler.schedule(this::flushWindow, config.getBatchWindow(), TimeUnit.MILLISECONDS);
+            }
+        }
+        if (fullBatch != null) {
+            send(fullBatch);
+        }
+        return call.result;
+    }
+
+    public RpcBatch batch() {
+        return new RpcBatch(this);
+    }
+
+    void send(List<RpcCall<?>> calls) {
+        byte[] payload;
+        try {
+            ArrayNode requests = objectMapper.createArrayNode();
+            for (int i = 0; i < calls.size(); i++) {
+                ObjectNode request = objectMapper.valueToTree(calls.get(i).request);
+                request.put("id", i);
+                requests.add(request);
+            }
+            payload = objectMapper.writeValueAsBytes(requests);
+        } catch (IOException | RuntimeException e) {
+            calls.forEach(call -> call.fail(e));
+            return;
+        }
+        execute(payload).whenCompleteAsync((body, error) -> {
+            if (error != null) {
+                calls.forEach(call -> call.fail(error));
+            } else {
+                dispatch(calls, body);
+            }
+        }, callbacks);
+    }
+
+    private void flushWindow() {
+        List<RpcCall<?>> calls;
+        synchronized (window) {
+            calls = drainWindow();
+        }
+        if (!calls.isEmpty()) {
+            send(calls);
+        }
+    }
+
+    private List<RpcCall<?>> drainWindow() {
+        List<RpcCall<?>> calls = new ArrayList<>(window);
+        window.clear();
+        return calls;
+    }
+
+    private void dispatch(List<RpcCall<?>> calls, byte[] body) {
+        try {
+            JsonNode responses = objectMapper.readTree(body);
+            if (!responses.isArray()) {
+                throw new IOException("the node did not answer with a batch response:" + responses);
+            }
+
+            JsonNode[] byPosition = new JsonNode[calls.size()];
+            for (JsonNode response : responses) {
+                int position = response.path("id").asInt(-1);
+                if (position >= 0 && position < byPosition.length) {
+                    // the caller gets its response with the id of its own request
+                    byPosition[position] = ((ObjectNode) response).put("id", calls.get(position).request.getId());
+                }
+            }
+            for (int i = 0; i < byPosition.length; i++) {
+                calls.get(i).complete(byPosition[i], objectMapper);
+            }
+        } catch (IOException | RuntimeException e) {
+            calls.forEach(call -> call.fail(e));
+        }
+    }
+
+    private CompletableFuture<byte[]> execute(byte[] payload) {
+        HttpPost httpPost = new HttpPost(url);
+        httpPost.setEntity(new ByteArrayEntity(payload, ContentType.APPLICATION_JSON));
+        CompletableFuture<byte[]> result = new CompletableFuture<>();
+        Future<HttpResponse> request = httpClient.execute(httpPost, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                try {
+                    result.complete(EntityUtils.toByteArray(response.getEntity()));
+                } catch (IOException e) {
+                    result.completeExceptionally(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                result.completeExceptionally(e);
+            }
+
+            @Override
+            public void cancelled() {
+                result.completeExceptionally(new IOException("the request to " + url + " has been cancelled"));
+            }
+        });
+        // the socket timeout only bounds inactivity, this bounds the whole exchange
+        Future<?> deadline = scheduler.schedule(() -> {
+            if (result.completeExceptionally(new TimeoutException("no answer from " + url + " after " + config.getRequestTimeout() + "ms"))) {
+                request.cancel(true);
+            }
+        }, config.getRequestTimeout(), TimeUnit.MILLISECONDS);
+        result.whenComplete((body, error) -> deadline.cancel(false));
+        return result;
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        callbacks.shutdown();
+        httpClient.close();
+    }
+
+    private static CloseableHttpAsyncClient createHttpClient(RpcConfig config) {
+        try {
+            PoolingNHttpClientConnectionManager connectionManager = new PoolingNHttpClientConnectionManager(
+                    new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                            .setIoThreadCount(config.getIoThreads())
+                            .setConnectTimeout(config.getConnectTimeout())
+                            .setSoKeepAlive(true)
+                            .build()));
+            connectionManager.setMaxTotal(config.getMaxConnections());
+            connectionManager.setDefaultMaxPerRoute(config.getMaxConnections());
+
+            CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .setKeepAliveStrategy((response, context) -> config.getKeepAlive())
+                    .setDefaultRequestConfig(RequestConfig.custom()
+                            .setConnectTimeout(config.getConnectTimeout())
+                            .setConnectionRequestTimeout(config.getRequestTimeout())
+                            .setSocketTimeout(config.getRequestTimeout())
+                            .build())
+                    .build();
+            client.start();
+            return client;
+        } catch (IOReactorException e) {
+            throw new EthereumApiException("error while creating the http client", e);
+        }
+    }
+
+    private static ThreadFactory daemon(String name) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+}
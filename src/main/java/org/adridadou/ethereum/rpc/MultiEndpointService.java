@@ -0,0 +1,253 @@
+package org.adridadou.ethereum.rpc;
+
+import org.adridadou.exception.EthereumApiException;
+import org.ethereum.core.Transaction;
+import org.spongycastle.util.encoders.Hex;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+import org.web3j.utils.Numeric;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Spreads the requests over several nodes. Reads go to the better of two random healthy nodes, scored by latency
+ * and requests in flight, and can be hedged to a second node once they run past a latency percentile. Everything
+ * touching the nonce of an account (eth_getTransactionCount and the sends) stays on one node per account so the
+ * node sees the transactions in nonce order.
+ * <p>
+ * Filter ids only exist on the node that created them, and two nodes can hand out the same id, so all the filter
+ * methods go to a single node and are never hedged. That node only changes when a filter is created while it is
+ * unhealthy, the filters of the previous one are then reported as not found and get installed again.
+ */
+public class MultiEndpointService implements Web3jService, Closeable {
+    private static final int MAX_FAILURES = 3;
+    private static final long COOLDOWN = 5_000;
+    private static final int LATENCY_SAMPLES = 1024;
+    private static final int PERCENTILE_REFRESH = 128;
+
+    private final List<Endpoint> endpoints;
+    private final double hedgePercentile;
+    private final Map<String, Endpoint> pinnedAccounts = new ConcurrentHashMap<>();
+    private final long[] latencies = new long[LATENCY_SAMPLES];
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "rpc-hedge");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private int latencyCount;
+    private volatile long hedgeThreshold = Long.MAX_VALUE;
+    private Endpoint filterEndpoint;
+
+    public MultiEndpointService(List<String> urls, RpcConfig config) {
+        if (urls.isEmpty()) {
+            throw new EthereumApiException("at least one endpoint is needed");
+        }
+        this.endpoints = urls.stream().map(url -> new Endpoint(url, new BatchingHttpService(url, config))).collect(Collectors.toList());
+        this.hedgePercentile = config.getHedgePercentile();
+    }
+
+    @Override
+    public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+        try {
+            return sendAsync(request, responseType).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("interrupted while waiting for " + request.getMethod(), e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("error while sending " + request.getMethod(), e.getCause());
+        }
+    }
+
+    @Override
+    public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+        String account = account(request);
+        if (account != null) {
+            return pinned(account).send(request, responseType);
+        }
+        switch (request.getMethod()) {
+            case "eth_newFilter":
+            case "eth_newBlockFilter":
+            case "eth_newPendingTransactionFilter":
+                return filterEndpoint(true).send(request, responseType);
+            case "eth_getFilterChanges":
+            case "eth_getFilterLogs":
+            case "eth_uninstallFilter":
+                return filterEndpoint(false).send(request, responseType);
+            default:
+                break;
+        }
+        Endpoint endpoint = pick(null);
+        if (hedgePercentile <= 0 || endpoints.size() == 1) {
+            return endpoint.send(request, responseType);
+        }
+        // each endpoint keeps its own future for its stats, the caller gets the first answer
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger running = new AtomicInteger(1);
+        forward(endpoint.send(request, responseType), result, running);
+        hedge(request, responseType, endpoint, result, running);
+        return result;
+    }
+
+    private <T extends Response> void hedge(Request request, Class<T> responseType, Endpoint first, CompletableFuture<T> result, AtomicInteger running) {
+        long threshold = hedgeThreshold;
+        if (threshold == Long.MAX_VALUE) {
+            return;
+        }
+        scheduler.schedule(() -> {
+            if (!result.isDone()) {
+                running.incrementAndGet();
+                forward(pick(first).send(request, responseType), result, running);
+            }
+        }, threshold, TimeUnit.MILLISECONDS);
+    }
+
+    // the first answer wins, the request only fails once every attempt has failed
+    private static <T> void forward(CompletableFuture<T> attempt, CompletableFuture<T> result, AtomicInteger running) {
+        attempt.whenComplete((response, error) -> {
+            if (error == null) {
+                result.complete(response);
+            } else if (running.decrementAndGet() == 0) {
+                result.completeExceptionally(error);
+            }
+        });
+    }
+
+    private synchronized Endpoint filterEndpoint(boolean creating) {
+        if (filterEndpoint == null || creating && !filterEndpoint.isHealthy()) {
+            filterEndpoint = pick(null);
+        }
+        return filterEndpoint;
+    }
+
+    // the account whose nonce this request depends on, null for the requests that can go anywhere
+    private String account(Request<?, ?> request) {
+        switch (request.getMethod()) {
+            case "eth_getTransactionCount":
+                return normalize(String.valueOf(request.getParams().get(0)));
+            case "eth_sendRawTransaction":
+                byte[] rawTransaction = Numeric.hexStringToByteArray(String.valueOf(request.getParams().get(0)));
+                return Hex.toHexString(new Transaction(rawTransaction).getSender());
+            default:
+                return null;
+        }
+    }
+
+    private Endpoint pinned(String account) {
+        return pinnedAccounts.compute(account, (key, endpoint) -> endpoint != null && endpoint.isHealthy() ? endpoint : pick(null));
+    }
+
+    // power of two choices, the unhealthy endpoints are only used when nothing else is left
+    private Endpoint pick(Endpoint excluded) {
+        List<Endpoint> candidates = endpoints.stream()
+                .filter(endpoint -> endpoint != excluded && endpoint.isHealthy())
+                .collect(Collectors.toList());
+        if (candidates.isEmpty()) {
+            candidates = endpoints.stream().filter(endpoint -> endpoint != excluded).collect(Collectors.toList());
+        }
+        if (candidates.isEmpty()) {
+            return excluded;
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        Endpoint a = candidates.get(random.nextInt(candidates.size()));
+        Endpoint b = candidates.get(random.nextInt(candidates.size()));
+        return a.score() <= b.score() ? a : b;
+    }
+
+    private synchronized void recordLatency(long latency) {
+        latencies[latencyCount % LATENCY_SAMPLES] = latency;
+        latencyCount++;
+        if (hedgePercentile > 0 && latencyCount % PERCENTILE_REFRESH == 0) {
+            long[] samples = Arrays.copyOf(latencies, Math.min(latencyCount, LATENCY_SAMPLES));
+            Arrays.sort(samples);
+            hedgeThreshold = samples[(int) Math.min(samples.length - 1, Math.floor(samples.length * hedgePercentile))];
+        }
+    }
+
+    public List<String> getHealthyEndpoints() {
+        List<String> healthy = new ArrayList<>();
+        endpoints.stream().filter(Endpoint::isHealthy).forEach(endpoint -> healthy.add(endpoint.url));
+        return healthy;
+    }
+
+    @Override
+    public void close() throws IOException {
+        scheduler.shutdown();
+        for (Endpoint endpoint : endpoints) {
+            endpoint.service.close();
+        }
+    }
+
+    private static String normalize(String address) {
+        return Numeric.cleanHexPrefix(address).toLowerCase();
+    }
+
+    private class Endpoint {
+        private final String url;
+        private final BatchingHttpService service;
+        private final AtomicInteger inFlight = new AtomicInteger();
+        private final AtomicInteger failures = new AtomicInteger();
+        private volatile double latency;
+        private volatile long retryAt;
+
+        private Endpoint(String url, BatchingHttpService service) {
+            this.url = url;
+            this.service = service;
+        }
+
+        private <T extends Response> CompletableFuture<T> send(Request request, Class<T> responseType) {
+            long start = System.currentTimeMillis();
+            inFlight.incrementAndGet();
+            CompletableFuture<T> result = service.sendAsync(request, responseType);
+            result.whenComplete((response, error) -> {
+                inFlight.decrementAndGet();
+                if (error != null) {
+                    onFailure();
+                } else {
+                    onSuccess(System.currentTimeMillis() - start);
+                }
+            });
+            return result;
+        }
+
+        private void onSuccess(long elapsed) {
+            failures.set(0);
+            latency = latency == 0 ? elapsed : latency * 0.8 + elapsed * 0.2;
+            recordLatency(elapsed);
+        }
+
+        private void onFailure() {
+            if (failures.incrementAndGet() >= MAX_FAILURES) {
+                retryAt = System.currentTimeMillis() + COOLDOWN;
+            }
+        }
+
+        // after the cooldown a failing endpoint gets traffic again, the next success makes it healthy
+        private boolean isHealthy() {
+            return failures.get() < MAX_FAILURES || System.currentTimeMillis() >= retryAt;
+        }
+
+        private double score() {
+            return (latency + 1) * (inFlight.get() + 1);
+        }
+    }
+}
@@ -0,0 +1,27 @@
+package org.adridadou.ethereum.rpc;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public enum Priority {
+    SEND, TRACKING, READ;
+
+    static Priority of(String method) {
+        switch (method) {
+            case "eth_sendRawTransaction":
+            case "eth_sendTransaction":
+            case "eth_getTransactionCount":
+            case "eth_estimateGas":
+            case "eth_gasPrice":
+                return SEND;
+            case "eth_getTransactionReceipt":
+            case "eth_blockNumber":
+            case "eth_newBlockFilter":
+            case "eth_getFilterChanges":
+            case "eth_uninstallFilter":
+                return TRACKING;
+            default:
+                return READ;
+        }
+    }
+}
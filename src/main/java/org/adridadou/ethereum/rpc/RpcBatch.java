@@ -0,0 +1,33 @@
+package org.adridadou.ethereum.rpc;
+
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class RpcBatch {
+    private final BatchingHttpService service;
+    private final List<RpcCall<?>> calls = new ArrayList<>();
+
+    RpcBatch(BatchingHttpService service) {
+        this.service = service;
+    }
+
+    public <T extends Response> CompletableFuture<T> add(Request<?, T> request, Class<T> responseType) {
+        RpcCall<T> call = new RpcCall<>(request, responseType);
+        calls.add(call);
+        return call.result;
+    }
+
+    public void send() {
+        if (!calls.isEmpty()) {
+            service.send(new ArrayList<>(calls));
+            calls.clear();
+        }
+    }
+}
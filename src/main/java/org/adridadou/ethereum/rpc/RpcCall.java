@@ -0,0 +1,39 @@
+package org.adridadou.ethereum.rpc;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * This code is released under Apache 2 license
+ */
+class RpcCall<T extends Response> {
+    final Request<?, ?> request;
+    final Class<T> responseType;
+    final CompletableFuture<T> result = new CompletableFuture<>();
+
+    RpcCall(Request<?, ?> request, Class<T> responseType) {
+        this.request = request;
+        this.responseType = responseType;
+    }
+
+    void complete(JsonNode response, ObjectMapper objectMapper) {
+        if (response == null) {
+            fail(new IOException("no response received for " + request.getMethod() + " (id " + request.getId() + ")"));
+            return;
+        }
+        try {
+            result.complete(objectMapper.treeToValue(response, responseType));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void fail(Throwable t) {
+        result.completeExceptionally(t);
+    }
+}
@@ -0,0 +1,107 @@
+package org.adridadou.ethereum.rpc;
+
+import java.util.Optional;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class RpcConfig {
+    private long batchWindow = 2;
+    private int maxBatchSize = 100;
+    private int maxConnections = 20;
+    private long keepAlive = 30_000;
+    private int connectTimeout = 5_000;
+    private int requestTimeout = 30_000;
+    private int ioThreads = Runtime.getRuntime().availableProcessors();
+    private double hedgePercentile = 0;
+    private AdmissionConfig admission;
+
+    public RpcConfig batchWindow(final long millis) {
+        this.batchWindow = millis;
+        return this;
+    }
+
+    public RpcConfig maxBatchSize(final int size) {
+        this.maxBatchSize = size;
+        return this;
+    }
+
+    public RpcConfig maxConnections(final int connections) {
+        this.maxConnections = connections;
+        return this;
+    }
+
+    public RpcConfig keepAlive(final long millis) {
+        this.keepAlive = millis;
+        return this;
+    }
+
+    public RpcConfig connectTimeout(final int millis) {
+        this.connectTimeout = millis;
+        return this;
+    }
+
+    public RpcConfig requestTimeout(final int millis) {
+        this.requestTimeout = millis;
+        return this;
+    }
+
+    public RpcConfig ioThreads(final int threads) {
+        this.ioThreads = threads;
+        return this;
+    }
+
+    /**
+     * With several endpoints, a read still running after this latency percentile (0.95 for example) is also sent
+     * to a second node and the first answer wins. 0 disables hedging.
+     */
+    public RpcConfig hedgeReads(final double percentile) {
+        this.hedgePercentile = percentile;
+        return this;
+    }
+
+    public RpcConfig admission(final AdmissionConfig admission) {
+        this.admission = admission;
+        return this;
+    }
+
+    public long getBatchWindow() {
+        return batchWindow;
+    }
+
+    public int getMaxBatchSize() {
+        return maxBatchSize;
+    }
+
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    public long getKeepAlive() {
+        return keepAlive;
+    }
+
+    public int getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    public int getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    public int getIoThreads() {
+        return ioThreads;
+    }
+
+    public double getHedgePercentile() {
+        return hedgePercentile;
+    }
+
+    public Optional<AdmissionConfig> getAdmission() {
+        return Optional.ofNullable(admission);
+    }
+
+    public static RpcConfig config() {
+        return new RpcConfig();
+    }
+}
@@ -0,0 +1,180 @@
+package org.adridadou.ethereum.smartcontract;
+
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthData;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class ConstantCallCache {
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<CallKey, EthData> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<CallKey, CompletableFuture<EthData>> loading = new HashMap<>();
+    private long currentBytes;
+    private String currentBlock;
+
+    public ConstantCallCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    public EthData get(String block, EthAddress address, EthAddress sender, EthData data, Supplier<EthData> call) {
+        CallKey key = new CallKey(block, address, sender, data);
+        synchronized (this) {
+            EthData result = entries.get(key);
+            if (result != null) {
+                return result;
+            }
+        }
+        EthData result = call.get();
+        put(key, result);
+        return result;
+    }
+
+    /**
+     * Same as {@link #get(String, EthAddress, EthAddress, EthData, Supplier)} without waiting for the call. Identical
+     * calls made while the first one is in flight share its future, a failed call is not cached.
+     */
+    public CompletableFuture<EthData> getAsync(String block, EthAddress address, EthAddress sender, EthData data, Supplier<CompletableFuture<EthData>> call) {
+        CallKey key = new CallKey(block, address, sender, data);
+        CompletableFuture<EthData> result;
+        synchronized (this) {
+            EthData cached = entries.get(key);
+            if (cached != null) {
+                return CompletableFuture.completedFuture(cached);
+            }
+            CompletableFuture<EthData> inFlight = loading.get(key);
+            if (inFlight != null) {
+                return inFlight;
+            }
+            result = new CompletableFuture<>();
+            loading.put(key, result);
+        }
+        CompletableFuture<EthData> execution;
+        try {
+            execution = call.get();
+        } catch (RuntimeException e) {
+            execution = new CompletableFuture<>();
+            execution.completeExceptionally(e);
+        }
+        execution.whenComplete((value, error) -> {
+            synchronized (this) {
+                loading.remove(key);
+                if (error == null) {
+                    put(key, value);
+                }
+            }
+            if (error == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(error);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Results of the previous head can't be hit by calls on the latest state anymore, so they are dropped right away.
+     * Entries of other (historical) blocks stay until they are evicted.
+     */
+    public synchronized void onBlock(String block) {
+        if (block.equals(currentBlock)) {
+            return;
+        }
+        String previous = currentBlock;
+        currentBlock = block;
+        if (previous == null) {
+            return;
+        }
+        Iterator<Map.Entry<CallKey, EthData>> it = entries.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<CallKey, EthData> entry = it.next();
+            if (entry.getKey().block.equals(previous)) {
+                currentBytes -= sizeOf(entry.getKey(), entry.getValue());
+                it.remove();
+            }
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        currentBytes = 0;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long sizeInBytes() {
+        return currentBytes;
+    }
+
+    private synchronized void put(CallKey key, EthData result) {
+        long size = sizeOf(key, result);
+        if (size > maxBytes) {
+            return;
+        }
+        EthData previous = entries.put(key, result);
+        if (previous != null) {
+            currentBytes -= sizeOf(key, previous);
+        }
+        currentBytes += size;
+
+        Iterator<Map.Entry<CallKey, EthData>> it = entries.entrySet().iterator();
+        while (it.hasNext() && (entries.size() > maxEntries || currentBytes > maxBytes)) {
+            Map.Entry<CallKey, EthData> eldest = it.next();
+            currentBytes -= sizeOf(eldest.getKey(), eldest.getValue());
+            it.remove();
+        }
+    }
+
+    private static long sizeOf(CallKey key, EthData result) {
+        return ENTRY_OVERHEAD + key.data.data.length + result.data.length;
+    }
+
+    private static class CallKey {
+        private final String block;
+        private final EthAddress address;
+        private final EthAddress sender;
+        private final EthData data;
+
+        private CallKey(String block, EthAddress address, EthAddress sender, EthData data) {
+            this.block = block;
+            this.address = address;
+            this.sender = sender;
+            this.data = data;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            CallKey callKey = (CallKey) o;
+
+            if (!block.equals(callKey.block)) return false;
+            if (!address.equals(callKey.address)) return false;
+            if (!sender.equals(callKey.sender)) return false;
+            return data.equals(callKey.data);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = block.hashCode();
+            result = 31 * result + address.hashCode();
+            result = 31 * result + sender.hashCode();
+            result = 31 * result + data.hashCode();
+            return result;
+        }
+    }
+}
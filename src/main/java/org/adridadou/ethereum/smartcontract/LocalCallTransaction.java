@@ -0,0 +1,30 @@
+package org.adridadou.ethereum.smartcontract;
+
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthAddress;
+import org.ethereum.core.Transaction;
+import org.ethereum.util.ByteUtil;
+
+/**
+ * This code is released under Apache 2 license
+ */
+class LocalCallTransaction extends Transaction {
+    static final long GAS_LIMIT = 100000000000000L;
+    private final byte[] sender;
+
+    LocalCallTransaction(EthAccount sender, EthAddress address, byte[] data) {
+        super(ByteUtil.longToBytesNoLeadZeroes(0),
+                ByteUtil.longToBytesNoLeadZeroes(0),
+                ByteUtil.longToBytesNoLeadZeroes(GAS_LIMIT),
+                address.address,
+                ByteUtil.longToBytesNoLeadZeroes(0),
+                data);
+        this.sender = sender.key.getAddress();
+    }
+
+    // local calls are never broadcast, so the sender is given as is instead of being recovered from a signature
+    @Override
+    public byte[] getSender() {
+        return sender;
+    }
+}
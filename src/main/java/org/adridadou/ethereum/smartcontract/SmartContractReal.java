@@ -3,9 +3,11 @@ package org.adridadou.ethereum.smartcontract;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
 
 import com.google.common.collect.Lists;
 import org.adridadou.ethereum.blockchain.BlockchainProxyReal;
+import org.adridadou.ethereum.blockchain.StateSnapshot;
 import org.adridadou.ethereum.values.EthAccount;
 import org.adridadou.ethereum.values.EthAddress;
 import org.adridadou.ethereum.values.EthData;
@@ -15,10 +17,8 @@ import org.ethereum.core.Block;
 import org.ethereum.core.BlockchainImpl;
 import org.ethereum.core.CallTransaction;
 import org.ethereum.core.CallTransaction.Contract;
-import org.ethereum.core.Repository;
-import org.ethereum.core.Transaction;
-import org.ethereum.core.TransactionExecutor;
 import org.ethereum.facade.Ethereum;
+import org.spongycastle.util.encoders.Hex;
 
 /**
  * Created by davidroon on 20.04.16.
@@ -44,38 +44,24 @@ public class SmartContractReal implements SmartContract {
     }
 
     public Object[] callConstFunction(Block callBlock, String functionName, Object... args) {
+        return callConstFunction(bcProxy.snapshotOf(callBlock), functionName, args);
+    }
 
-        Transaction tx = CallTransaction.createCallTransaction(0, 0, 100000000000000L,
-                address.toString(), 0, contract.getByName(functionName), args);
-        tx.sign(sender.key);
-
-        Repository repository = getRepository().getSnapshotTo(callBlock.getStateRoot()).startTracking();
-
-        try {
-            TransactionExecutor executor = new TransactionExecutor
-                    (tx, callBlock.getCoinbase(), repository, getBlockchain().getBlockStore(),
-                            getBlockchain().getProgramInvokeFactory(), callBlock)
-                    .setLocalCall(true);
-
-            executor.init();
-            executor.execute();
-            executor.go();
-            executor.finalization();
+    private Object[] callConstFunction(StateSnapshot snapshot, String functionName, Object... args) {
+        CallTransaction.Function func = contract.getByName(functionName);
+        EthData data = EthData.of(func.encode(args));
+        Supplier<EthData> call = () -> snapshot.call(new LocalCallTransaction(sender, address, data.data));
 
-            return contract.getByName(functionName).decodeResult(executor.getResult().getHReturn());
-        } finally {
-            repository.rollback();
-        }
+        EthData result = bcProxy.getConstantCallCache()
+                .map(cache -> cache.get(Hex.toHexString(snapshot.block.getHash()), address, sender.getAddress(), data, call))
+                .orElseGet(call);
+        return func.decodeResult(result.data);
     }
 
     private BlockchainImpl getBlockchain() {
         return (BlockchainImpl) ethereum.getBlockchain();
     }
 
-    private Repository getRepository() {
-        return getBlockchain().getRepository();
-    }
-
 
     public CompletableFuture<Object[]> callFunction(String functionName, Object... args) {
         return callFunction(EthValue.wei(1), functionName, args);
@@ -103,7 +89,9 @@ public class SmartContractReal implements SmartContract {
     }
 
     public Object[] callConstFunction(String functionName, Object... args) {
-        return callConstFunction(getBlockchain().getBestBlock(), functionName, args);
+        StateSnapshot snapshot = bcProxy.getCallSnapshot()
+                .orElseGet(() -> bcProxy.newSnapshot(getBlockchain().getBestBlock()));
+        return callConstFunction(snapshot, functionName, args);
     }
 
     public EthAddress getAddress() {
@@ -10,6 +10,7 @@ import org.adridadou.ethereum.values.EthValue;
 import org.adridadou.exception.EthereumApiException;
 import org.ethereum.core.CallTransaction;
 import org.ethereum.core.CallTransaction.Contract;
+import org.web3j.protocol.core.DefaultBlockParameter;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -40,11 +41,27 @@ public class SmartContractRpc implements SmartContract {
     }
 
     public Object[] callConstFunction(String functionName, Object... args) {
+        return Web3JFacade.await(callConstFunctionAsync(functionName, args));
+    }
 
+    public CompletableFuture<Object[]> callConstFunctionAsync(String functionName, Object... args) {
         return Optional.ofNullable(contract.getByName(functionName))
                 .map(func -> {
-                    EthData result = web3j.constantCall(sender, address, EthData.of(func.encode(args)));
-                    return func.decodeResult(result.data);
+                    EthData data = EthData.of(func.encode(args));
+                    Optional<EthData> aggregated = bcProxy.getAggregatedResult(sender, address, func, data);
+                    if (aggregated.isPresent()) {
+                        return CompletableFuture.completedFuture(func.decodeResult(aggregated.get().data));
+                    }
+                    CompletableFuture<EthData> result = bcProxy.getConstantCallCache()
+                            .map(cache -> bcProxy.getCallBlock()
+                                    .map(CompletableFuture::completedFuture)
+                                    .orElseGet(() -> bcProxy.getLatestBlockNumberAsync().thenApply(DefaultBlockParameter::valueOf))
+                                    .thenCompose(block -> cache.getAsync(block.getValue(), address, sender.getAddress(), data,
+                                            () -> web3j.constantCall(sender, address, data, block))))
+                            .orElseGet(() -> bcProxy.getCallBlock()
+                                    .map(block -> web3j.constantCall(sender, address, data, block))
+                                    .orElseGet(() -> web3j.constantCall(sender, address, data)));
+                    return result.thenApply(res -> func.decodeResult(res.data));
                 }).orElseThrow(() -> new EthereumApiException("function " + functionName + " cannot be found. available:" + getAvailableFunctions()));
     }
 
@@ -0,0 +1,39 @@
+pragma solidity ^0.4.0;
+
+// Runs the packed calls one after the other and returns, for each of them, a success word followed by its output.
+// A packed call is the target (20 bytes), the input size (2 bytes), the output size (2 bytes) and the input.
+contract MulticallAggregator {
+    function aggregate(bytes calls) constant returns (bytes) {
+        uint total = 0;
+        uint offset = 0;
+        while (offset < calls.length) {
+            total += 32 + readSize(calls, offset + 22);
+            offset += 24 + readSize(calls, offset + 20);
+        }
+
+        bytes memory results = new bytes(total);
+        uint position = 0;
+        offset = 0;
+        while (offset < calls.length) {
+            uint target = 0;
+            for (uint i = 0; i < 20; i++) {
+                target = target * 256 + uint(uint8(calls[offset + i]));
+            }
+            uint inputSize = readSize(calls, offset + 20);
+            uint outputSize = readSize(calls, offset + 22);
+            assembly {
+                let input := add(add(calls, 56), offset)
+                let output := add(add(results, 64), position)
+                let success := call(sub(gas, 5000), target, 0, input, inputSize, output, outputSize)
+                mstore(add(add(results, 32), position), success)
+            }
+            position += 32 + outputSize;
+            offset += 24 + inputSize;
+        }
+        return results;
+    }
+
+    function readSize(bytes data, uint offset) internal constant returns (uint) {
+        return uint(uint8(data[offset])) * 256 + uint(uint8(data[offset + 1]));
+    }
+}
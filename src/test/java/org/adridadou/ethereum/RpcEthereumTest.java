@@ -7,6 +7,7 @@ import org.adridadou.ethereum.provider.RpcEthereumFacadeProvider;
 import org.adridadou.ethereum.values.EthAccount;
 import org.adridadou.ethereum.values.EthAddress;
 import org.adridadou.ethereum.values.EthData;
+import org.adridadou.ethereum.values.EthValue;
 import org.adridadou.ethereum.values.SoliditySource;
 import org.ethereum.crypto.ECKey;
 import org.junit.Test;
@@ -16,6 +17,7 @@ import java.math.BigInteger;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
 
+import static java.util.concurrent.CompletableFuture.completedFuture;
 import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -44,10 +46,11 @@ public class RpcEthereumTest {
     public void test() throws IOException, ExecutionException, InterruptedException {
         EthereumFacade ethereum = provider.create(web3j);
 
-        when(web3j.getTransactionCount(account)).thenReturn(BigInteger.TEN);
-        when(web3j.getGasPrice()).thenReturn(BigInteger.TEN);
-        when(web3j.estimateGas(eq(account), any(EthData.class))).thenReturn(BigInteger.TEN);
-        when(web3j.constantCall(eq(account), eq(address), any(EthData.class))).thenReturn(EthData.of(new byte[0]));
+        when(web3j.getTransactionCount(account)).thenReturn(completedFuture(BigInteger.TEN));
+        when(web3j.getGasPrice()).thenReturn(completedFuture(BigInteger.TEN));
+        when(web3j.estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class))).thenReturn(completedFuture(BigInteger.TEN));
+        when(web3j.sendTransaction(any(EthData.class))).thenReturn(completedFuture(EthData.of(new byte[32])));
+        when(web3j.constantCall(eq(account), eq(address), any(EthData.class))).thenReturn(completedFuture(EthData.of(new byte[0])));
         Contract service = ethereum.createContractProxy(contract, "myContract2", address, account, Contract.class);
 
         service.myMethod(23).get();
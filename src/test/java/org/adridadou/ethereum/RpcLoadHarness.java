@@ -0,0 +1,95 @@
+package org.adridadou.ethereum;
+
+import org.adridadou.ethereum.blockchain.LocalRpcNode;
+import org.adridadou.ethereum.provider.RpcEthereumFacadeProvider;
+import org.adridadou.ethereum.rpc.RpcConfig;
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthValue;
+import org.adridadou.ethereum.values.SoliditySource;
+import org.ethereum.crypto.ECKey;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Measures sends/s and calls/s end to end, through RpcEthereumFacadeProvider and a LocalRpcNode.
+ * Arguments: number of sends, number of calls, caller threads, injected latency in ms, injected error rate.
+ */
+public class RpcLoadHarness {
+    private static final SoliditySource contract = new SoliditySource(
+            "contract myContract2 {" +
+                    "  int i1;" +
+                    "  function myMethod(int value) {i1 = value;}" +
+                    "  function getI1() constant returns (int) {return i1;}" +
+                    "}");
+
+    public static void main(String[] args) throws Exception {
+        int sends = args.length > 0 ? Integer.parseInt(args[0]) : 1_000;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 10_000;
+        int threads = args.length > 2 ? Integer.parseInt(args[2]) : 32;
+        long latency = args.length > 3 ? Long.parseLong(args[3]) : 0;
+        double errorRate = args.length > 4 ? Double.parseDouble(args[4]) : 0;
+
+        EthAccount account = new EthAccount(ECKey.fromPrivate(BigInteger.ONE));
+        LocalRpcNode node = new LocalRpcNode()
+                .latency(latency)
+                .errorRate(errorRate)
+                .initialBalance(account, EthValue.ether(BigInteger.valueOf(1_000)));
+        String url = node.start();
+        try {
+            EthereumFacade ethereum = new RpcEthereumFacadeProvider().create(url, RpcConfig.config());
+            EthAddress address = ethereum.publishContract(contract, "myContract2", account).get();
+            Contract service = ethereum.createContractProxy(contract, "myContract2", address, account, Contract.class);
+
+            long start = System.nanoTime();
+            List<CompletableFuture<Void>> results = new ArrayList<>();
+            for (int i = 0; i < sends; i++) {
+                results.add(service.myMethod(i));
+            }
+            int failedSends = countFailures(results);
+            report("sends", sends, failedSends, start);
+
+            ExecutorService callers = Executors.newFixedThreadPool(threads);
+            start = System.nanoTime();
+            List<CompletableFuture<Integer>> callResults = new ArrayList<>();
+            for (int i = 0; i < calls; i++) {
+                callResults.add(CompletableFuture.supplyAsync(service::getI1, callers));
+            }
+            int failedCalls = countFailures(callResults);
+            report("calls", calls, failedCalls, start);
+            callers.shutdown();
+        } finally {
+            node.stop();
+        }
+    }
+
+    private static int countFailures(List<? extends CompletableFuture<?>> results) {
+        int failures = 0;
+        for (CompletableFuture<?> result : results) {
+            try {
+                result.join();
+            } catch (RuntimeException e) {
+                failures++;
+            }
+        }
+        return failures;
+    }
+
+    private static void report(String name, int count, int failures, long start) {
+        double seconds = (System.nanoTime() - start) / 1e9;
+        System.out.println(String.format("%s: %d in %.2fs, %.0f/s, %d failed", name, count, seconds, count / seconds, failures));
+    }
+
+    private interface Contract {
+        CompletableFuture<Void> myMethod(Integer value);
+
+        Integer getI1();
+    }
+}
@@ -0,0 +1,212 @@
+package org.adridadou.ethereum;
+
+import org.adridadou.ethereum.blockchain.LocalRpcNode;
+import org.adridadou.ethereum.blockchain.Web3JFacade;
+import org.adridadou.ethereum.provider.RpcEthereumFacadeProvider;
+import org.adridadou.ethereum.rpc.AdmissionConfig;
+import org.adridadou.ethereum.rpc.BatchingHttpService;
+import org.adridadou.ethereum.rpc.Priority;
+import org.adridadou.ethereum.rpc.RpcConfig;
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthValue;
+import org.adridadou.ethereum.values.SoliditySource;
+import org.ethereum.crypto.ECKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Runs the RPC proxy end to end against a LocalRpcNode.
+ */
+public class RpcStackTest {
+    private static final SoliditySource contract = new SoliditySource(
+            "contract myContract2 {" +
+                    "  int i1;" +
+                    "  function myMethod(int value) {i1 = value;}" +
+                    "  function getI1() constant returns (int) {return i1;}" +
+                    "}");
+
+    private final RpcEthereumFacadeProvider provider = new RpcEthereumFacadeProvider();
+    private final EthAccount account = new EthAccount(ECKey.fromPrivate(BigInteger.ONE));
+    private final LocalRpcNode node = new LocalRpcNode().initialBalance(account, EthValue.ether(BigInteger.valueOf(1_000)));
+    private final List<EthereumFacade> facades = new ArrayList<>();
+    private String url;
+
+    @Before
+    public void before() throws IOException {
+        url = node.start();
+    }
+
+    @After
+    public void after() {
+        facades.forEach(EthereumFacade::shutdown);
+        node.stop();
+    }
+
+    @Test
+    public void sendsAreMinedAndReadBack() throws Exception {
+        Contract service = publish(facade(url, RpcConfig.config()));
+
+        service.myMethod(42).get(30, TimeUnit.SECONDS);
+
+        assertEquals(42, service.getI1().intValue());
+    }
+
+    @Test
+    public void sequentialSendsReuseTheNonceAndTheGasEstimate() throws Exception {
+        Contract service = publish(facade(url, RpcConfig.config()));
+
+        for (int i = 0; i < 3; i++) {
+            service.myMethod(i).get(30, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, node.getCallCount("eth_getTransactionCount"));
+        // one for the publication, one for the first call of myMethod
+        assertEquals(2, node.getCallCount("eth_estimateGas"));
+        assertEquals(2, service.getI1().intValue());
+    }
+
+    @Test
+    public void receiptsOfConcurrentSendsAreTracked() throws Exception {
+        Contract service = publish(facade(url, RpcConfig.config()));
+
+        List<CompletableFuture<Void>> sends = new ArrayList<>();
+        for (int i = 1; i <= 20; i++) {
+            sends.add(service.myMethod(i));
+        }
+        CompletableFuture.allOf(sends.toArray(new CompletableFuture[sends.size()])).get(30, TimeUnit.SECONDS);
+
+        assertEquals(20, service.getI1().intValue());
+        assertTrue(node.getCallCount("eth_getTransactionReceipt") < 20 * 10);
+    }
+
+    @Test
+    public void concurrentAsyncRequestsAreBatched() throws IOException {
+        BatchingHttpService transport = new BatchingHttpService(url, RpcConfig.config().batchWindow(20));
+        Web3JFacade web3j = new Web3JFacade(transport);
+        long before = node.getHttpRequestCount();
+
+        List<CompletableFuture<BigInteger>> balances = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            balances.add(web3j.getBalance(account.getAddress()));
+        }
+
+        balances.forEach(balance -> assertEquals(EthValue.ether(BigInteger.valueOf(1_000)).inWei(), balance.join()));
+        assertTrue(node.getHttpRequestCount() - before < 50);
+        transport.close();
+    }
+
+    @Test
+    public void constantCallsAreCachedPerBlock() throws Exception {
+        EthereumFacade ethereum = facade(url, RpcConfig.config()).enableConstantCallCache(100, 100_000);
+        Contract service = publish(ethereum);
+        service.myMethod(7).get(30, TimeUnit.SECONDS);
+        // no block is mined from here on, the cached head settles on the last one
+        Thread.sleep(1_100);
+        long before = node.getCallCount("eth_call");
+
+        for (int i = 0; i < 5; i++) {
+            assertEquals(7, service.getI1().intValue());
+        }
+
+        assertEquals(1, node.getCallCount("eth_call") - before);
+    }
+
+    @Test
+    public void multipleEndpointsFollowTheChain() throws Exception {
+        EthereumFacade ethereum = facade(Arrays.asList(url, url), RpcConfig.config().hedgeReads(0.9));
+        CompletableFuture<Long> nextBlock = new CompletableFuture<>();
+        ethereum.events().observeBlocks().subscribe(params -> nextBlock.complete(params.block.getNumber()));
+        Contract service = publish(ethereum);
+
+        service.myMethod(3).get(30, TimeUnit.SECONDS);
+
+        assertTrue(nextBlock.get(30, TimeUnit.SECONDS) > 0);
+        assertEquals(3, service.getI1().intValue());
+        assertEquals(0, node.getCallCount("eth_uninstallFilter"));
+    }
+
+    @Test
+    public void admissionControlLetsEveryRequestThrough() throws Exception {
+        RpcConfig config = RpcConfig.config().admission(AdmissionConfig.config().maxInFlight(2).rate(Priority.READ, 500, 10));
+        Contract service = publish(facade(url, config));
+        service.myMethod(5).get(30, TimeUnit.SECONDS);
+
+        ExecutorService callers = Executors.newFixedThreadPool(16);
+        List<CompletableFuture<Integer>> reads = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            reads.add(CompletableFuture.supplyAsync(service::getI1, callers));
+        }
+
+        for (CompletableFuture<Integer> read : reads) {
+            assertEquals(5, read.get(30, TimeUnit.SECONDS).intValue());
+        }
+        callers.shutdown();
+    }
+
+    @Test
+    public void aggregatedCallsRunOnceAndShareOneEthCall() throws Exception {
+        EthereumFacade ethereum = facade(url, RpcConfig.config()).enableMulticall(account);
+        List<Contract> services = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            Contract service = publish(ethereum);
+            service.myMethod(i + 10).get(30, TimeUnit.SECONDS);
+            services.add(service);
+        }
+        // the first round publishes the aggregator
+        ethereum.callAggregated(Arrays.<Supplier<Integer>>asList(services.get(0)::getI1));
+
+        AtomicInteger runs = new AtomicInteger();
+        List<Supplier<Integer>> calls = new ArrayList<>();
+        services.forEach(service -> calls.add(() -> {
+            runs.incrementAndGet();
+            return service.getI1();
+        }));
+        long before = node.getCallCount("eth_call");
+
+        assertEquals(Arrays.asList(10, 11, 12), ethereum.callAggregated(calls));
+        assertEquals(3, runs.get());
+        assertEquals(1, node.getCallCount("eth_call") - before);
+    }
+
+    private EthereumFacade facade(String url, RpcConfig config) {
+        EthereumFacade ethereum = provider.create(url, config);
+        facades.add(ethereum);
+        return ethereum;
+    }
+
+    private EthereumFacade facade(List<String> urls, RpcConfig config) {
+        EthereumFacade ethereum = provider.create(urls, config);
+        facades.add(ethereum);
+        return ethereum;
+    }
+
+    private Contract publish(EthereumFacade ethereum) throws Exception {
+        EthAddress address = ethereum.publishContract(contract, "myContract2", account).get(30, TimeUnit.SECONDS);
+        return ethereum.createContractProxy(contract, "myContract2", address, account, Contract.class);
+    }
+
+    private interface Contract {
+        CompletableFuture<Void> myMethod(Integer value);
+
+        Integer getI1();
+    }
+}
@@ -0,0 +1,49 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.exception.EthereumApiException;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class ChainStateCacheTest {
+    private final Web3JFacade web3j = mock(Web3JFacade.class);
+
+    @Test
+    public void concurrentReadersShareTheLookup() {
+        CompletableFuture<BigInteger> lookup = new CompletableFuture<>();
+        when(web3j.getGasPrice()).thenReturn(lookup);
+        ChainStateCache chainState = new ChainStateCache(web3j);
+
+        CompletableFuture<BigInteger> first = chainState.getGasPrice();
+        CompletableFuture<BigInteger> second = chainState.getGasPrice();
+        lookup.complete(BigInteger.TEN);
+
+        assertSame(first, second);
+        assertEquals(BigInteger.TEN, second.join());
+        verify(web3j, times(1)).getGasPrice();
+    }
+
+    @Test
+    public void failedLookupIsNotCached() {
+        CompletableFuture<String> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new EthereumApiException("node down"));
+        when(web3j.getNetworkVersion()).thenReturn(failure, completedFuture("3"));
+        ChainStateCache chainState = new ChainStateCache(web3j);
+
+        assertTrue(chainState.getNetworkVersion().isCompletedExceptionally());
+        assertEquals("3", chainState.getNetworkVersion().join());
+    }
+}
@@ -0,0 +1,84 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthData;
+import org.adridadou.ethereum.values.EthValue;
+import org.ethereum.crypto.ECKey;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigInteger;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class GasEstimatorTest {
+    private final Web3JFacade web3j = mock(Web3JFacade.class);
+    private final EthAccount account = new EthAccount(ECKey.fromPrivate(BigInteger.ONE));
+    private final EthAddress address = EthAddress.of("0x3939393848");
+    private final EthValue value = EthValue.wei(0);
+    private final EthData data = EthData.of(new byte[36]);
+    private final GasEstimator estimator = new GasEstimator(web3j);
+
+    @Before
+    public void before() {
+        when(web3j.estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class))).thenReturn(completedFuture(BigInteger.valueOf(100_000)));
+    }
+
+    @Test
+    public void estimateIsLearnedAndGivenWithAMargin() {
+        assertEquals(120_000, estimate(data));
+        assertEquals(120_000, estimate(data));
+        verify(web3j, times(1)).estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class));
+    }
+
+    @Test
+    public void receiptsOnlyRaiseTheLearnedGas() {
+        estimate(data);
+
+        estimator.onReceipt(address, data, BigInteger.valueOf(120_000), BigInteger.valueOf(110_000));
+        assertEquals(132_000, estimate(data));
+        estimator.onReceipt(address, data, BigInteger.valueOf(132_000), BigInteger.valueOf(50_000));
+        assertEquals(132_000, estimate(data));
+        verify(web3j, times(1)).estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class));
+    }
+
+    @Test
+    public void outOfGasAndFailuresDropTheLearnedGas() {
+        estimate(data);
+
+        estimator.onReceipt(address, data, BigInteger.valueOf(120_000), BigInteger.valueOf(120_000));
+        estimate(data);
+        estimator.onFailure(address, data);
+        estimate(data);
+
+        verify(web3j, times(3)).estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class));
+    }
+
+    @Test
+    public void gasIsLearnedPerSelectorAndSizeClass() {
+        estimate(data);
+        estimate(EthData.of(new byte[40]));
+        verify(web3j, times(1)).estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class));
+
+        byte[] otherSelector = new byte[36];
+        otherSelector[0] = 1;
+        estimate(EthData.of(otherSelector));
+        estimate(EthData.of(new byte[68]));
+        verify(web3j, times(3)).estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class));
+    }
+
+    private long estimate(EthData data) {
+        return estimator.estimate(account, address, value, data).join().longValue();
+    }
+}
@@ -0,0 +1,455 @@
+package org.adridadou.ethereum.blockchain;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpServer;
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthValue;
+import org.apache.commons.io.IOUtils;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.config.blockchain.FrontierConfig;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+import org.web3j.utils.Numeric;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.math.BigInteger;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.ethereum.config.blockchain.FrontierConfig.FrontierConstants;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * In-process JSON-RPC node backed by a StandaloneBlockchain, answering the methods this library calls. Sent
+ * transactions are mined every blockTime, and latency and errors can be injected to see how the client copes.
+ */
+public class LocalRpcNode {
+    private static final Logger log = LoggerFactory.getLogger(LocalRpcNode.class);
+    private static final long CALL_GAS_LIMIT = 100_000_000L;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, MinedReceipt> receipts = new ConcurrentHashMap<>();
+    private final Map<Long, List<String>> blockFilters = new ConcurrentHashMap<>();
+    private final Map<String, Integer> pendingNonces = new HashMap<>();
+    private final AtomicLong filterIds = new AtomicLong();
+    private final AtomicLong httpRequests = new AtomicLong();
+    private final Map<String, AtomicLong> calls = new ConcurrentHashMap<>();
+    private final List<Transaction> pending = new ArrayList<>();
+    private final Map<EthAccount, EthValue> initialBalances = new HashMap<>();
+    private long latency;
+    private double errorRate;
+    private long blockTime = 200;
+    private long gasEstimate = 500_000;
+    private long gasPrice = 1;
+    private StandaloneBlockchain blockchain;
+    private HttpServer server;
+    private ExecutorService handlers;
+    private ScheduledExecutorService miner;
+
+    public LocalRpcNode latency(final long millis) {
+        this.latency = millis;
+        return this;
+    }
+
+    public LocalRpcNode errorRate(final double rate) {
+        this.errorRate = rate;
+        return this;
+    }
+
+    public LocalRpcNode blockTime(final long millis) {
+        this.blockTime = millis;
+        return this;
+    }
+
+    public LocalRpcNode gasEstimate(final long gas) {
+        this.gasEstimate = gas;
+        return this;
+    }
+
+    public LocalRpcNode initialBalance(final EthAccount account, final EthValue value) {
+        initialBalances.put(account, value);
+        return this;
+    }
+
+    /**
+     * @return the url to give to RpcEthereumFacadeProvider
+     */
+    public String start() throws IOException {
+        SystemProperties.getDefault().setBlockchainConfig(new FrontierConfig(new FrontierConstants() {
+            @Override
+            public BigInteger getMINIMUM_DIFFICULTY() {
+                return BigInteger.ONE;
+            }
+        }));
+        blockchain = new StandaloneBlockchain().withAutoblock(false).withGasPrice(gasPrice);
+        initialBalances.forEach((account, value) -> blockchain.withAccountBalance(account.getAddress().address, value.inWei()));
+        blockchain.addEthereumListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(Block block, List<TransactionReceipt> blockReceipts) {
+                for (int i = 0; i < blockReceipts.size(); i++) {
+                    receipts.put(hex(block.getTransactionsList().get(i).getHash()), new MinedReceipt(block, i, blockReceipts.get(i)));
+                }
+                blockFilters.values().forEach(hashes -> {
+                    synchronized (hashes) {
+                        hashes.add(hex(block.getHash()));
+                    }
+                });
+            }
+        });
+
+        handlers = Executors.newFixedThreadPool(16);
+        miner = Executors.newSingleThreadScheduledExecutor();
+        miner.scheduleWithFixedDelay(this::mine, blockTime, blockTime, TimeUnit.MILLISECONDS);
+
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.setExecutor(handlers);
+        server.createContext("/", exchange -> {
+            try {
+                JsonNode request = objectMapper.readTree(IOUtils.toByteArray(exchange.getRequestBody()));
+                httpRequests.incrementAndGet();
+                if (latency > 0) {
+                    Thread.sleep(latency);
+                }
+                JsonNode response;
+                if (request.isArray()) {
+                    ArrayNode responses = objectMapper.createArrayNode();
+                    for (JsonNode single : request) {
+                        responses.add(answer(single));
+                    }
+                    response = responses;
+                } else {
+                    response = answer(request);
+                }
+                byte[] body = objectMapper.writeValueAsBytes(response);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                exchange.sendResponseHeaders(503, -1);
+            } finally {
+                exchange.close();
+            }
+        });
+        server.start();
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    public long getHttpRequestCount() {
+        return httpRequests.get();
+    }
+
+    public long getCallCount(final String method) {
+        return calls.getOrDefault(method, new AtomicLong()).get();
+    }
+
+    public void stop() {
+        server.stop(0);
+        handlers.shutdown();
+        miner.shutdown();
+    }
+
+    private void mine() {
+        lock.writeLock().lock();
+        try {
+            if (!pending.isEmpty()) {
+                // concurrent sends arrive out of order, a node pool would order them by nonce
+                pending.sort(Comparator.comparing((Transaction tx) -> Hex.toHexString(tx.getSender()))
+                        .thenComparing(tx -> new BigInteger(1, tx.getNonce())));
+                pending.forEach(blockchain::submitTransaction);
+                pending.clear();
+                pendingNonces.clear();
+                blockchain.createBlock();
+            }
+        } catch (RuntimeException e) {
+            // an exception escaping here would stop the mining
+            log.error("error while mining", e);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private JsonNode answer(JsonNode request) {
+        ObjectNode response = objectMapper.createObjectNode();
+        response.put("jsonrpc", "2.0");
+        response.put("id", request.get("id").asLong());
+        calls.computeIfAbsent(request.get("method").asText(), method -> new AtomicLong()).incrementAndGet();
+        if (errorRate > 0 && ThreadLocalRandom.current().nextDouble() < errorRate) {
+            return error(response, -32000, "injected error");
+        }
+        JsonNode params = request.path("params");
+        lock.readLock().lock();
+        try {
+            switch (request.get("method").asText()) {
+                case "net_version":
+                    response.put("result", "555");
+                    break;
+                case "eth_blockNumber":
+                    response.put("result", quantity(best().getNumber()));
+                    break;
+                case "eth_gasPrice":
+                    response.put("result", quantity(gasPrice));
+                    break;
+                case "eth_estimateGas":
+                    response.put("result", quantity(gasEstimate));
+                    break;
+                case "eth_getBalance":
+                    response.put("result", quantity(blockchain.getBlockchain().getRepository().getBalance(bytes(params.get(0).asText()))));
+                    break;
+                case "eth_getTransactionCount":
+                    response.put("result", quantity(nonce(params.get(0).asText())));
+                    break;
+                case "eth_call":
+                    response.put("result", hex(call(params.get(0), block(params.get(1).asText())).data));
+                    break;
+                case "eth_sendRawTransaction":
+                    response.put("result", submit(params.get(0).asText()));
+                    break;
+                case "eth_getTransactionReceipt":
+                    MinedReceipt receipt = receipts.get(params.get(0).asText());
+                    if (receipt == null) {
+                        response.putNull("result");
+                    } else {
+                        response.set("result", receipt.toJson());
+                    }
+                    break;
+                case "eth_getBlockByNumber":
+                    putBlock(response, block(params.get(0).asText()));
+                    break;
+                case "eth_getBlockByHash":
+                    putBlock(response, blockchain.getBlockchain().getBlockByHash(bytes(params.get(0).asText())));
+                    break;
+                case "eth_newBlockFilter":
+                    long filterId = filterIds.incrementAndGet();
+                    blockFilters.put(filterId, new ArrayList<>());
+                    response.put("result", quantity(filterId));
+                    break;
+                case "eth_getFilterChanges":
+                    List<String> hashes = blockFilters.get(Numeric.decodeQuantity(params.get(0).asText()).longValue());
+                    if (hashes == null) {
+                        return error(response, -32000, "filter not found");
+                    }
+                    ArrayNode changes = response.putArray("result");
+                    synchronized (hashes) {
+                        hashes.forEach(changes::add);
+                        hashes.clear();
+                    }
+                    break;
+                case "eth_uninstallFilter":
+                    response.put("result", blockFilters.remove(Numeric.decodeQuantity(params.get(0).asText()).longValue()) != null ? "true" : "false");
+                    break;
+                default:
+                    return error(response, -32601, "method not found");
+            }
+        } catch (RuntimeException e) {
+            return error(response, -32000, String.valueOf(e.getMessage()));
+        } finally {
+            lock.readLock().unlock();
+        }
+        return response;
+    }
+
+    private ObjectNode error(ObjectNode response, int code, String message) {
+        ObjectNode error = response.putObject("error");
+        error.put("code", code);
+        error.put("message", message);
+        return response;
+    }
+
+    private Block best() {
+        return blockchain.getBlockchain().getBestBlock();
+    }
+
+    private Block block(String tag) {
+        switch (tag) {
+            case "latest":
+            case "pending":
+                return best();
+            case "earliest":
+                return blockchain.getBlockchain().getBlockByNumber(0);
+            default:
+                return blockchain.getBlockchain().getBlockByNumber(Numeric.decodeQuantity(tag).longValue());
+        }
+    }
+
+    private BigInteger nonce(String address) {
+        synchronized (pendingNonces) {
+            return blockchain.getBlockchain().getRepository().getNonce(bytes(address))
+                    .add(BigInteger.valueOf(pendingNonces.getOrDefault(Numeric.cleanHexPrefix(address).toLowerCase(), 0)));
+        }
+    }
+
+    private String submit(String rawTransaction) {
+        Transaction tx = new Transaction(bytes(rawTransaction));
+        synchronized (pendingNonces) {
+            pendingNonces.merge(Hex.toHexString(tx.getSender()), 1, Integer::sum);
+            pending.add(tx);
+        }
+        return hex(tx.getHash());
+    }
+
+    private org.adridadou.ethereum.values.EthData call(JsonNode tx, Block block) {
+        byte[] from = bytes(tx.path("from").asText());
+        Transaction call = new Transaction(
+                ByteUtil.EMPTY_BYTE_ARRAY,
+                ByteUtil.EMPTY_BYTE_ARRAY,
+                ByteUtil.longToBytesNoLeadZeroes(CALL_GAS_LIMIT),
+                bytes(tx.path("to").asText()),
+                ByteUtil.EMPTY_BYTE_ARRAY,
+                bytes(tx.path("data").asText())) {
+            @Override
+            public byte[] getSender() {
+                return from;
+            }
+        };
+        return new StateSnapshot(block, blockchain.getBlockchain()).call(call);
+    }
+
+    private void putBlock(ObjectNode response, Block block) {
+        if (block == null) {
+            response.putNull("result");
+        } else {
+            response.set("result", toJson(block));
+        }
+    }
+
+    private JsonNode toJson(Block block) {
+        ObjectNode json = objectMapper.createObjectNode();
+        json.put("number", quantity(block.getNumber()));
+        json.put("hash", hex(block.getHash()));
+        json.put("parentHash", hex(block.getParentHash()));
+        json.put("nonce", hex(block.getNonce()));
+        json.put("sha3Uncles", hex(block.getUnclesHash()));
+        json.put("logsBloom", hex(block.getLogBloom()));
+        json.put("transactionsRoot", hex(block.getTxTrieRoot()));
+        json.put("stateRoot", hex(block.getStateRoot()));
+        json.put("receiptsRoot", hex(block.getReceiptsRoot()));
+        json.put("miner", hex(block.getCoinbase()));
+        json.put("mixHash", hex(block.getMixHash()));
+        json.put("difficulty", quantity(new BigInteger(1, block.getDifficulty())));
+        json.put("extraData", hex(block.getExtraData()));
+        json.put("gasLimit", quantity(new BigInteger(1, block.getGasLimit())));
+        json.put("gasUsed", quantity(block.getGasUsed()));
+        json.put("timestamp", quantity(block.getTimestamp()));
+        json.putArray("uncles");
+        ArrayNode transactions = json.putArray("transactions");
+        List<Transaction> txs = block.getTransactionsList();
+        for (int i = 0; i < txs.size(); i++) {
+            Transaction tx = txs.get(i);
+            ObjectNode txJson = transactions.addObject();
+            txJson.put("hash", hex(tx.getHash()));
+            txJson.put("nonce", quantity(new BigInteger(1, tx.getNonce())));
+            txJson.put("blockHash", hex(block.getHash()));
+            txJson.put("blockNumber", quantity(block.getNumber()));
+            txJson.put("transactionIndex", quantity(i));
+            txJson.put("from", hex(tx.getSender()));
+            if (tx.isContractCreation()) {
+                txJson.putNull("to");
+            } else {
+                txJson.put("to", hex(tx.getReceiveAddress()));
+            }
+            txJson.put("value", quantity(new BigInteger(1, tx.getValue())));
+            txJson.put("gasPrice", quantity(new BigInteger(1, tx.getGasPrice())));
+            txJson.put("gas", quantity(new BigInteger(1, tx.getGasLimit())));
+            txJson.put("input", hex(tx.getData()));
+            ECKey.ECDSASignature signature = tx.getSignature();
+            txJson.put("r", Numeric.toHexStringWithPrefix(signature.r));
+            txJson.put("s", Numeric.toHexStringWithPrefix(signature.s));
+            txJson.put("v", signature.v);
+        }
+        return json;
+    }
+
+    private class MinedReceipt {
+        private final Block block;
+        private final int index;
+        private final TransactionReceipt receipt;
+
+        private MinedReceipt(Block block, int index, TransactionReceipt receipt) {
+            this.block = block;
+            this.index = index;
+            this.receipt = receipt;
+        }
+
+        private JsonNode toJson() {
+            Transaction tx = block.getTransactionsList().get(index);
+            ObjectNode json = objectMapper.createObjectNode();
+            json.put("transactionHash", hex(tx.getHash()));
+            json.put("transactionIndex", quantity(index));
+            json.put("blockHash", hex(block.getHash()));
+            json.put("blockNumber", quantity(block.getNumber()));
+            json.put("cumulativeGasUsed", quantity(new BigInteger(1, receipt.getCumulativeGas())));
+            json.put("gasUsed", quantity(new BigInteger(1, receipt.getGasUsed())));
+            if (tx.isContractCreation()) {
+                json.put("contractAddress", hex(tx.getContractAddress()));
+            } else {
+                json.putNull("contractAddress");
+            }
+            ArrayNode logs = json.putArray("logs");
+            List<LogInfo> logInfos = receipt.getLogInfoList();
+            for (int i = 0; i < logInfos.size(); i++) {
+                LogInfo logInfo = logInfos.get(i);
+                ObjectNode log = logs.addObject();
+                log.put("logIndex", quantity(i));
+                log.put("transactionIndex", quantity(index));
+                log.put("transactionHash", hex(tx.getHash()));
+                log.put("blockHash", hex(block.getHash()));
+                log.put("blockNumber", quantity(block.getNumber()));
+                log.put("address", hex(logInfo.getAddress()));
+                log.put("data", hex(logInfo.getData()));
+                ArrayNode topics = log.putArray("topics");
+                for (DataWord topic : logInfo.getTopics()) {
+                    topics.add(hex(topic.getData()));
+                }
+            }
+            return json;
+        }
+    }
+
+    private static String hex(byte[] data) {
+        return "0x" + Hex.toHexString(data == null ? ByteUtil.EMPTY_BYTE_ARRAY : data);
+    }
+
+    private static byte[] bytes(String hex) {
+        return hex == null || hex.isEmpty() ? ByteUtil.EMPTY_BYTE_ARRAY : Numeric.hexStringToByteArray(hex);
+    }
+
+    private static String quantity(long value) {
+        return quantity(BigInteger.valueOf(value));
+    }
+
+    private static String quantity(BigInteger value) {
+        return Numeric.encodeQuantity(value);
+    }
+}
@@ -0,0 +1,84 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthData;
+import org.adridadou.ethereum.values.EthValue;
+import org.adridadou.exception.EthereumApiException;
+import org.ethereum.core.Transaction;
+import org.ethereum.crypto.ECKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class NonceCacheTest {
+    private final Web3JFacade web3j = mock(Web3JFacade.class);
+    private final EthAccount account = new EthAccount(ECKey.fromPrivate(BigInteger.ONE));
+    private final EthAddress address = EthAddress.of("0x3939393848");
+
+    @Test
+    public void nodeIsAskedOnceThenNoncesAreIncremented() {
+        when(web3j.getTransactionCount(account)).thenReturn(completedFuture(BigInteger.TEN));
+        NonceCache nonces = new NonceCache(web3j);
+
+        assertEquals(BigInteger.valueOf(10), nonces.next(account).join());
+        assertEquals(BigInteger.valueOf(11), nonces.next(account).join());
+        assertEquals(BigInteger.valueOf(12), nonces.next(account).join());
+        verify(web3j, times(1)).getTransactionCount(account);
+    }
+
+    @Test
+    public void failedLookupIsNotKept() {
+        when(web3j.getTransactionCount(account)).thenReturn(failed(), completedFuture(BigInteger.TEN));
+        NonceCache nonces = new NonceCache(web3j);
+
+        assertTrue(nonces.next(account).isCompletedExceptionally());
+        assertEquals(BigInteger.TEN, nonces.next(account).join());
+    }
+
+    @Test
+    public void failedSendResetsTheNonce() {
+        List<BigInteger> sentNonces = new ArrayList<>();
+        when(web3j.getTransactionCount(account)).thenReturn(completedFuture(BigInteger.TEN));
+        when(web3j.getGasPrice()).thenReturn(completedFuture(BigInteger.ONE));
+        when(web3j.getBlockNumber()).thenReturn(completedFuture(BigInteger.ONE));
+        when(web3j.estimateGas(eq(account), eq(address), any(EthValue.class), any(EthData.class))).thenReturn(completedFuture(BigInteger.valueOf(21_000)));
+        when(web3j.sendTransaction(any(EthData.class))).thenAnswer(invocation -> {
+            Transaction tx = new Transaction(((EthData) invocation.getArguments()[0]).data);
+            sentNonces.add(new BigInteger(1, tx.getNonce()));
+            return sentNonces.size() == 1 ? failed() : completedFuture(EthData.of(tx.getHash()));
+        });
+        BlockchainProxyRpc proxy = new BlockchainProxyRpc(web3j);
+
+        assertTrue(proxy.sendTx(EthValue.wei(0), EthData.empty(), account, address).isCompletedExceptionally());
+        proxy.sendTx(EthValue.wei(0), EthData.empty(), account, address).join();
+
+        // the rejected nonce is used again instead of leaving a gap
+        assertEquals(2, sentNonces.size());
+        assertEquals(BigInteger.TEN, sentNonces.get(0));
+        assertEquals(BigInteger.TEN, sentNonces.get(1));
+        verify(web3j, times(2)).getTransactionCount(account);
+    }
+
+    private static <T> CompletableFuture<T> failed() {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        result.completeExceptionally(new EthereumApiException("node down"));
+        return result;
+    }
+}
@@ -0,0 +1,110 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.adridadou.ethereum.values.EthData;
+import org.adridadou.exception.EthereumApiException;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.protocol.core.methods.response.TransactionReceipt;
+
+import java.math.BigInteger;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+import static java.util.concurrent.CompletableFuture.completedFuture;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class ReceiptTrackerTest {
+    private final Web3JFacade web3j = mock(Web3JFacade.class);
+    private final ChainStateCache chainState = mock(ChainStateCache.class);
+    private final AtomicLong blockNumber = new AtomicLong();
+    private final Map<EthData, TransactionReceipt> mined = new ConcurrentHashMap<>();
+    private final AtomicInteger lookups = new AtomicInteger();
+    private final EthData hash = EthData.of(new byte[]{1, 2, 3});
+
+    @Before
+    public void before() {
+        when(chainState.getBlockNumber()).thenAnswer(invocation -> completedFuture(BigInteger.valueOf(blockNumber.get())));
+        when(web3j.getTransactionReceipts(any())).thenAnswer(invocation -> {
+            Map<EthData, CompletableFuture<TransactionReceipt>> result = new HashMap<>();
+            for (Object requested : (Collection<?>) invocation.getArguments()[0]) {
+                lookups.incrementAndGet();
+                result.put((EthData) requested, completedFuture(mined.get(requested)));
+            }
+            return result;
+        });
+    }
+
+    @Test
+    public void receiptsAreLookedUpAgainOnNewBlocksOnly() throws Exception {
+        ReceiptTracker tracker = new ReceiptTracker(web3j, chainState, 10, 60_000);
+        CompletableFuture<TransactionReceipt> result = tracker.track(hash);
+
+        waitUntil(() -> lookups.get() == 1);
+        Thread.sleep(100);
+        assertEquals(1, lookups.get());
+
+        TransactionReceipt receipt = mock(TransactionReceipt.class);
+        mined.put(hash, receipt);
+        blockNumber.incrementAndGet();
+
+        assertSame(receipt, result.get(5, TimeUnit.SECONDS));
+        assertEquals(2, lookups.get());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    @Test
+    public void receiptNeverMinedTimesOut() throws Exception {
+        ReceiptTracker tracker = new ReceiptTracker(web3j, chainState, 10, 50);
+        CompletableFuture<TransactionReceipt> result = tracker.track(hash);
+
+        try {
+            result.get(5, TimeUnit.SECONDS);
+            fail("the receipt should have timed out");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof EthereumApiException);
+        }
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    @Test
+    public void stopFailsThePendingReceiptsAndStopsPolling() throws Exception {
+        ReceiptTracker tracker = new ReceiptTracker(web3j, chainState, 10, 60_000);
+        CompletableFuture<TransactionReceipt> result = tracker.track(hash);
+        waitUntil(() -> lookups.get() == 1);
+
+        tracker.stop();
+        blockNumber.incrementAndGet();
+        Thread.sleep(100);
+
+        assertTrue(result.isCompletedExceptionally());
+        assertEquals(1, lookups.get());
+        assertEquals(0, tracker.getPendingCount());
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            if (System.currentTimeMillis() > deadline) {
+                fail("condition not met after 5 seconds");
+            }
+            Thread.sleep(5);
+        }
+    }
+}
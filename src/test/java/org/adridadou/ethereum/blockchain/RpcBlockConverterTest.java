@@ -0,0 +1,53 @@
+package org.adridadou.ethereum.blockchain;
+
+import org.ethereum.core.Transaction;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class RpcBlockConverterTest {
+    private static final String HASH = "0x5c504ed432cb51138bcf09aa5e8a410dd4a1e204ef84bfed1be16dfba1b22060";
+    private static final String FROM = "0xa7d9ddbe1f17865597fbd27ec712455208b6b76d";
+
+    @Test
+    public void eip155TransactionKeepsTheHashAndSenderOfTheNode() {
+        // chain id 1
+        Transaction tx = RpcBlockConverter.toTransaction(rpcTransaction(37));
+
+        assertEquals(HASH.substring(2), Hex.toHexString(tx.getHash()));
+        assertEquals(FROM.substring(2), Hex.toHexString(tx.getSender()));
+        assertEquals(28, tx.getSignature().v);
+    }
+
+    @Test
+    public void preEip155TransactionKeepsItsV() {
+        Transaction tx = RpcBlockConverter.toTransaction(rpcTransaction(27));
+
+        assertEquals(27, tx.getSignature().v);
+        assertEquals(FROM.substring(2), Hex.toHexString(tx.getSender()));
+    }
+
+    private static org.web3j.protocol.core.methods.response.Transaction rpcTransaction(int v) {
+        org.web3j.protocol.core.methods.response.Transaction tx = mock(org.web3j.protocol.core.methods.response.Transaction.class);
+        when(tx.getHash()).thenReturn(HASH);
+        when(tx.getFrom()).thenReturn(FROM);
+        when(tx.getTo()).thenReturn("0xf02c1c8e6114b1dbe8937a39260b5b0a374432bb");
+        when(tx.getNonce()).thenReturn(BigInteger.ONE);
+        when(tx.getGasPrice()).thenReturn(BigInteger.TEN);
+        when(tx.getGas()).thenReturn(BigInteger.valueOf(21_000));
+        when(tx.getValue()).thenReturn(BigInteger.ZERO);
+        when(tx.getInput()).thenReturn("0x");
+        when(tx.getR()).thenReturn("0x1b5e176d927f8e9ab405058b2d2457392da3e20f328b16ddabcebc33eaac5fea");
+        when(tx.getS()).thenReturn("0x4ba69724e8f69de52f0125ad8b3c5c2cef33019bac3249e2c0a2192766d1721c");
+        when(tx.getV()).thenReturn(v);
+        return tx;
+    }
+}
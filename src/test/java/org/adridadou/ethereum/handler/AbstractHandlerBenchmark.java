@@ -0,0 +1,54 @@
+package org.adridadou.ethereum.handler;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This code is released under Apache 2 license
+ * <p>
+ * Cost of publishing one event to all the subscribers of a handler.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Fork(1)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+public class AbstractHandlerBenchmark {
+    @Param({"1", "10", "100", "1000", "10000"})
+    public int subscribers;
+
+    private final AbstractHandler<Object> handler = new AbstractHandler<>();
+    private final Object event = new Object();
+
+    @Setup
+    public void setup(Blackhole blackhole) {
+        for (int i = 0; i < subscribers; i++) {
+            handler.observable.subscribe(blackhole::consume);
+        }
+    }
+
+    @Benchmark
+    public void publish() {
+        handler.onTransaction(event);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AbstractHandlerBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,140 @@
+package org.adridadou.ethereum.handler;
+
+import org.ethereum.core.Block;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.LongFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class BlockReplayTest {
+    private final Map<Long, OnBlockParameters> chain = new ConcurrentHashMap<>();
+    private final List<String> published = Collections.synchronizedList(new ArrayList<>());
+
+    @Test
+    public void historyIsFollowedByTheLiveBlocks() throws InterruptedException {
+        EthereumEventHandler events = events(5);
+        replay(events, 2);
+        awaitPublished(4);
+
+        live(events, 6);
+        live(events, 7);
+
+        awaitPublished(6);
+        assertEquals(Arrays.asList("2a", "3a", "4a", "5a", "6a", "7a"), published);
+    }
+
+    @Test
+    public void missedLiveBlocksAreReadBeforeGoingOn() throws InterruptedException {
+        EthereumEventHandler events = events(3);
+        replay(events, 1);
+        awaitPublished(3);
+
+        chain.put(4L, block(4, "a"));
+        chain.put(5L, block(5, "a"));
+        live(events, 6);
+        live(events, 7);
+
+        awaitPublished(7);
+        assertEquals(Arrays.asList("1a", "2a", "3a", "4a", "5a", "6a", "7a"), published);
+    }
+
+    @Test
+    public void replacedBlockIsPublishedAgain() throws InterruptedException {
+        EthereumEventHandler events = events(3);
+        replay(events, 1);
+        awaitPublished(3);
+
+        OnBlockParameters replacement = block(3, "b");
+        events.onBlock(replacement.block, replacement.receipts);
+        events.onBlock(replacement.block, replacement.receipts);
+        OnBlockParameters next = block(4, "b");
+        events.onBlock(next.block, next.receipts);
+
+        awaitPublished(5);
+        Thread.sleep(100);
+        assertEquals(Arrays.asList("1a", "2a", "3a", "3b", "4b"), published);
+    }
+
+    @Test
+    public void failedReadsAreRetried() throws InterruptedException {
+        EthereumEventHandler events = events(4);
+        Map<Long, Integer> failures = new ConcurrentHashMap<>();
+        failures.put(2L, 2);
+        failures.put(3L, 1);
+        replay(events, 1, number -> {
+            if (failures.merge(number, -1, Integer::sum) >= 0) {
+                CompletableFuture<OnBlockParameters> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IllegalStateException("block " + number + " not found"));
+                return failed;
+            }
+            return CompletableFuture.completedFuture(chain.get(number));
+        });
+
+        awaitPublished(4);
+        assertEquals(Arrays.asList("1a", "2a", "3a", "4a"), published);
+    }
+
+    @Test
+    public void missingBlocksAreReadAgain() throws InterruptedException {
+        EthereumEventHandler events = events(3);
+        OnBlockParameters lagging = chain.remove(2L);
+        replay(events, 1);
+        awaitPublished(1);
+
+        chain.put(2L, lagging);
+
+        awaitPublished(3);
+        assertEquals(Arrays.asList("1a", "2a", "3a"), published);
+    }
+
+    private EthereumEventHandler events(long head) {
+        for (long number = 1; number <= head; number++) {
+            chain.put(number, block(number, "a"));
+        }
+        return new EthereumEventHandler(head, new OnBlockHandler(), new OnTransactionHandler());
+    }
+
+    private void replay(EthereumEventHandler events, long fromBlock) {
+        replay(events, fromBlock, number -> CompletableFuture.completedFuture(chain.get(number)));
+    }
+
+    private void replay(EthereumEventHandler events, long fromBlock, LongFunction<CompletableFuture<OnBlockParameters>> blocks) {
+        new BlockReplay(blocks, events, 10)
+                .from(fromBlock)
+                .subscribe(params -> published.add(new String(params.block.getHash())));
+    }
+
+    private void live(EthereumEventHandler events, long number) {
+        OnBlockParameters params = block(number, "a");
+        chain.put(number, params);
+        events.onBlock(params.block, params.receipts);
+    }
+
+    private void awaitPublished(int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (published.size() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, published.size());
+    }
+
+    private static OnBlockParameters block(long number, String fork) {
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn((number + fork).getBytes());
+        return new OnBlockParameters(block, Collections.emptyList());
+    }
+}
@@ -0,0 +1,51 @@
+package org.adridadou.ethereum.handler;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class ChainHeadTest {
+    private final ChainHead head = new ChainHead(10, Runnable::run);
+
+    @Test
+    public void pastAndCurrentHeightsAreAlreadyReached() {
+        assertEquals(Long.valueOf(10), head.waitFor(3).getNow(null));
+        assertEquals(Long.valueOf(10), head.waitFor(10).getNow(null));
+        assertEquals(0, head.getWaiterCount());
+    }
+
+    @Test
+    public void futureHeightWaitsForTheHead() {
+        CompletableFuture<Long> eleven = head.waitFor(11);
+        CompletableFuture<Long> thirteen = head.waitFor(13);
+        assertEquals(2, head.getWaiterCount());
+
+        head.update(11);
+        assertEquals(Long.valueOf(11), eleven.getNow(null));
+        assertFalse(thirteen.isDone());
+
+        // one block can reach several waiters at once
+        head.update(14);
+        assertEquals(Long.valueOf(14), thirteen.getNow(null));
+        assertEquals(0, head.getWaiterCount());
+    }
+
+    @Test
+    public void lowerHeightAfterAReorgKeepsTheWaitersQueued() {
+        CompletableFuture<Long> twelve = head.waitFor(12);
+
+        head.update(9);
+        assertFalse(twelve.isDone());
+        assertEquals(9, head.getHeight());
+
+        head.update(12);
+        assertTrue(twelve.isDone());
+    }
+}
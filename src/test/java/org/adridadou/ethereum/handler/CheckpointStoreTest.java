@@ -0,0 +1,91 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.exception.EthereumApiException;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.Optional;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class CheckpointStoreTest {
+    private File file;
+
+    @Before
+    public void before() throws IOException {
+        file = File.createTempFile("checkpoints", ".db");
+        file.deleteOnExit();
+    }
+
+    @Test
+    public void checkpointsSurviveAReload() throws IOException {
+        try (CheckpointStore store = new CheckpointStore(file, 4, 1000)) {
+            store.checkpoint("indexer", 10);
+            store.checkpoint("mailer", 20);
+            store.checkpoint("indexer", 11);
+        }
+
+        try (CheckpointStore store = new CheckpointStore(file, 4, 1000)) {
+            assertEquals(Optional.of(11L), store.get("indexer"));
+            assertEquals(Optional.of(20L), store.get("mailer"));
+            assertEquals(Optional.empty(), store.get("auditor"));
+            store.checkpoint("auditor", 5);
+            assertEquals(Optional.of(5L), store.get("auditor"));
+            assertEquals(Optional.of(11L), store.get("indexer"));
+        }
+    }
+
+    @Test
+    public void nameSizeBeyondTheSlotIsRejected() throws IOException {
+        try (CheckpointStore store = new CheckpointStore(file, 4, 1000)) {
+            store.checkpoint("indexer", 10);
+        }
+        writeShort(0, 0x7FFF);
+
+        assertCorrupt();
+    }
+
+    @Test
+    public void negativeNameSizeIsRejected() throws IOException {
+        try (CheckpointStore store = new CheckpointStore(file, 4, 1000)) {
+            store.checkpoint("indexer", 10);
+        }
+        writeShort(0, -1);
+
+        assertCorrupt();
+    }
+
+    @Test
+    public void slotAfterAnEmptyOneIsRejected() throws IOException {
+        try (CheckpointStore store = new CheckpointStore(file, 4, 1000)) {
+            store.checkpoint("indexer", 10);
+            store.checkpoint("mailer", 20);
+        }
+        writeShort(0, 0);
+
+        assertCorrupt();
+    }
+
+    private void assertCorrupt() {
+        try {
+            new CheckpointStore(file, 4, 1000);
+            fail("the file is corrupt");
+        } catch (EthereumApiException e) {
+            assertEquals(EthereumApiException.class, e.getCause().getClass());
+        }
+    }
+
+    private void writeShort(long position, int value) throws IOException {
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(position);
+            raw.writeShort(value);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.adridadou.ethereum.handler;
+
+import org.ethereum.core.Block;
+import org.junit.Test;
+import rx.Subscription;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.LongFunction;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class ConfirmedBlocksTest {
+    private final ChainHead head = new ChainHead(0, Runnable::run);
+    private final Map<Long, OnBlockParameters> chain = new HashMap<>();
+    private final List<String> published = new ArrayList<>();
+
+    @Test
+    public void blocksAreConfirmedAtDepth() {
+        confirmedBlocks(2);
+        publish(block(1, "a", ""));
+        publish(block(2, "a", "a"));
+        publish(block(3, "a", "a"));
+
+        assertEquals(Collections.singletonList("+1a"), published);
+    }
+
+    @Test
+    public void shallowReorgIsNeverPublished() {
+        confirmedBlocks(2);
+        publish(block(1, "a", ""));
+        publish(block(2, "a", "a"));
+        publish(block(3, "a", "a"));
+        publish(block(3, "b", "a"));
+        publish(block(4, "b", "b"));
+
+        assertEquals(Arrays.asList("+1a", "+2a"), published);
+    }
+
+    @Test
+    public void deepReorgRetractsConfirmedBlocks() {
+        confirmedBlocks(2);
+        for (long number = 1; number <= 5; number++) {
+            publish(block(number, "a", number == 1 ? "" : "a"));
+        }
+        chain.put(3L, block(3, "b", "a"));
+        chain.put(4L, block(4, "b", "b"));
+        publish(block(5, "b", "b"));
+        // the new branch is seen with its first block above the previous head
+        publish(block(6, "b", "b"));
+
+        assertEquals(Arrays.asList("+1a", "+2a", "+3a", "-3a", "+3b", "+4b"), published);
+    }
+
+    @Test
+    public void skippedBlocksAreReadAndConfirmed() {
+        confirmedBlocks(2);
+        publish(block(1, "a", ""));
+        chain.put(2L, block(2, "a", "a"));
+        chain.put(3L, block(3, "a", "a"));
+        publish(block(4, "a", "a"));
+        publish(block(5, "a", "a"));
+
+        assertEquals(Arrays.asList("+1a", "+2a", "+3a"), published);
+    }
+
+    @Test
+    public void readsDoNotHoldThePublisherBack() {
+        CompletableFuture<OnBlockParameters> read = new CompletableFuture<>();
+        confirmedBlocks(1, number -> number == 2 ? read : CompletableFuture.completedFuture(chain.get(number)));
+        publish(block(1, "a", ""));
+        publish(block(2, "a", "a"));
+        publish(block(3, "a", "a"));
+        assertEquals(Collections.emptyList(), published);
+
+        read.complete(chain.get(2L));
+
+        assertEquals(Arrays.asList("+1a", "+2a"), published);
+    }
+
+    @Test
+    public void headIsFollowedWhileSubscribed() {
+        List<Long> reads = new ArrayList<>();
+        Subscription subscription = confirmedBlocks(2, number -> {
+            reads.add(number);
+            return CompletableFuture.completedFuture(chain.get(number));
+        });
+        publish(block(1, "a", ""));
+        assertEquals(Collections.singletonList(1L), reads);
+
+        subscription.unsubscribe();
+        publish(block(2, "a", "a"));
+        publish(block(3, "a", "a"));
+
+        assertEquals(Collections.singletonList(1L), reads);
+        assertEquals(0, head.getWaiterCount());
+    }
+
+    private Subscription confirmedBlocks(int confirmations) {
+        return confirmedBlocks(confirmations, number -> CompletableFuture.completedFuture(chain.get(number)));
+    }
+
+    private Subscription confirmedBlocks(int confirmations, LongFunction<CompletableFuture<OnBlockParameters>> blocks) {
+        return new ConfirmedBlocks(confirmations, 16, blocks, head)
+                .observable()
+                .subscribe(confirmation -> published.add((confirmation.retracted ? "-" : "+") + name(confirmation.params)));
+    }
+
+    private void publish(OnBlockParameters params) {
+        chain.put(params.block.getNumber(), params);
+        head.update(params.block.getNumber());
+    }
+
+    private String name(OnBlockParameters params) {
+        return params.block.getNumber() + new String(params.block.getHash()).substring(1);
+    }
+
+    private static OnBlockParameters block(long number, String branch, String parentBranch) {
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        when(block.getHash()).thenReturn(hash(number, branch));
+        when(block.getParentHash()).thenReturn(hash(number - 1, parentBranch));
+        return new OnBlockParameters(block, Collections.emptyList());
+    }
+
+    private static byte[] hash(long number, String branch) {
+        return (number + branch).getBytes();
+    }
+}
@@ -0,0 +1,180 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.ethereum.values.EthAddress;
+import org.ethereum.core.Block;
+import org.ethereum.core.Bloom;
+import org.ethereum.core.CallTransaction;
+import org.ethereum.core.TransactionReceipt;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.LogInfo;
+import org.junit.Test;
+import rx.Observable;
+import rx.Subscription;
+
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class ContractEventRouterTest {
+    private static final String ABI = "[{\"anonymous\":false,\"inputs\":["
+            + "{\"indexed\":false,\"name\":\"amount\",\"type\":\"uint256\"},"
+            + "{\"indexed\":true,\"name\":\"id\",\"type\":\"uint256\"},"
+            + "{\"indexed\":false,\"name\":\"memo\",\"type\":\"string\"},"
+            + "{\"indexed\":true,\"name\":\"tag\",\"type\":\"string\"}],"
+            + "\"name\":\"Transfer\",\"type\":\"event\"}]";
+
+    private final List<CallTransaction.Function> abi = Arrays.asList(new CallTransaction.Contract(ABI).functions);
+    private final CallTransaction.Function event = abi.get(0);
+    private final EthAddress address = EthAddress.of("0x3939393848");
+    private final OnBlockHandler blocks = new OnBlockHandler();
+    private final ContractEventRouter router = new ContractEventRouter(blocks.observable);
+
+    @Test
+    public void indexedNonIndexedAndDynamicValuesAreDecoded() {
+        List<Object[]> values = new ArrayList<>();
+        router.observe(address, abi, "Transfer").subscribe(values::add);
+
+        blocks.newBlock(block(receipt(transfer())));
+
+        assertEquals(1, values.size());
+        assertDecoded(values.get(0));
+    }
+
+    @Test
+    public void replayedBlocksAreDecodedTheSameWay() {
+        List<Object[]> values = new ArrayList<>();
+        router.observe(Observable.just(block(receipt(transfer()))), address, abi, "Transfer").subscribe(values::add);
+
+        assertEquals(1, values.size());
+        assertDecoded(values.get(0));
+    }
+
+    @Test
+    public void routeIsRemovedWithItsLastSubscriber() {
+        Observable<Object[]> transfers = router.observe(address, abi, "Transfer");
+        Subscription first = transfers.subscribe(values -> {
+        });
+        Subscription second = transfers.subscribe(values -> {
+        });
+        assertEquals(1, router.getRouteCount());
+
+        first.unsubscribe();
+        assertEquals(1, router.getRouteCount());
+        second.unsubscribe();
+        assertEquals(0, router.getRouteCount());
+
+        List<Object[]> values = new ArrayList<>();
+        transfers.subscribe(values::add);
+        blocks.newBlock(block(receipt(transfer())));
+        assertEquals(1, router.getRouteCount());
+        assertEquals(1, values.size());
+    }
+
+    @Test
+    public void blockMissingTheBloomIsNotLookedInto() {
+        List<Object[]> values = new ArrayList<>();
+        router.observe(address, abi, "Transfer").subscribe(values::add);
+        LogInfo other = new LogInfo(EthAddress.of("0x1234").address, Collections.singletonList(new DataWord(word(1))), new byte[0]);
+        TransactionReceipt receipt = receipt(other);
+
+        blocks.newBlock(block(receipt));
+
+        assertTrue(values.isEmpty());
+        verify(receipt, never()).getLogInfoList();
+    }
+
+    @Test
+    public void receiptMissingTheBloomIsSkippedInABlockThatHits() {
+        List<Object[]> values = new ArrayList<>();
+        router.observe(address, abi, "Transfer").subscribe(values::add);
+        TransactionReceipt miss = receipt(new LogInfo(EthAddress.of("0x1234").address, Collections.singletonList(new DataWord(word(1))), new byte[0]));
+        TransactionReceipt hit = receipt(transfer());
+
+        blocks.newBlock(block(miss, hit));
+
+        assertEquals(1, values.size());
+        verify(miss, never()).getLogInfoList();
+        verify(hit, atLeastOnce()).getLogInfoList();
+    }
+
+    @Test
+    public void nothingIsLookedIntoOnceNoRouteIsLeft() {
+        router.observe(address, abi, "Transfer").subscribe(values -> {
+        }).unsubscribe();
+        TransactionReceipt receipt = receipt(transfer());
+
+        blocks.newBlock(block(receipt));
+
+        verify(receipt, never()).getLogInfoList();
+    }
+
+    private void assertDecoded(Object[] values) {
+        assertEquals(BigInteger.valueOf(1_000), values[0]);
+        assertEquals(BigInteger.valueOf(7), values[1]);
+        assertEquals("a memo", values[2]);
+        // an indexed string is only logged as its hash
+        assertArrayEquals(HashUtil.sha3("a tag".getBytes(StandardCharsets.UTF_8)), (byte[]) values[3]);
+    }
+
+    private LogInfo transfer() {
+        byte[] memo = "a memo".getBytes(StandardCharsets.UTF_8);
+        byte[] data = new byte[4 * 32];
+        System.arraycopy(word(1_000), 0, data, 0, 32);
+        System.arraycopy(word(64), 0, data, 32, 32);
+        System.arraycopy(word(memo.length), 0, data, 64, 32);
+        System.arraycopy(memo, 0, data, 96, memo.length);
+        List<DataWord> topics = Arrays.asList(
+                new DataWord(event.encodeSignatureLong()),
+                new DataWord(word(7)),
+                new DataWord(HashUtil.sha3("a tag".getBytes(StandardCharsets.UTF_8))));
+        return new LogInfo(address.address, topics, data);
+    }
+
+    private static TransactionReceipt receipt(LogInfo... logs) {
+        TransactionReceipt receipt = mock(TransactionReceipt.class);
+        when(receipt.getLogInfoList()).thenReturn(Arrays.asList(logs));
+        when(receipt.getBloomFilter()).thenReturn(bloom(logs));
+        return receipt;
+    }
+
+    private static OnBlockParameters block(TransactionReceipt... receipts) {
+        Bloom bloom = new Bloom();
+        for (TransactionReceipt receipt : receipts) {
+            bloom.or(receipt.getBloomFilter());
+        }
+        Block block = mock(Block.class);
+        when(block.getLogBloom()).thenReturn(bloom.getData());
+        return new OnBlockParameters(block, Arrays.asList(receipts));
+    }
+
+    private static Bloom bloom(LogInfo... logs) {
+        Bloom bloom = new Bloom();
+        for (LogInfo log : logs) {
+            bloom.or(log.getBloom());
+        }
+        return bloom;
+    }
+
+    private static byte[] word(long value) {
+        byte[] bytes = BigInteger.valueOf(value).toByteArray();
+        byte[] word = new byte[32];
+        System.arraycopy(bytes, 0, word, 32 - bytes.length, bytes.length);
+        return word;
+    }
+}
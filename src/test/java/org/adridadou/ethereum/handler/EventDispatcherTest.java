@@ -0,0 +1,135 @@
+package org.adridadou.ethereum.handler;
+
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class EventDispatcherTest {
+    private final OnBlockHandler onBlockHandler = new OnBlockHandler();
+    private final OnTransactionHandler onTransactionHandler = new OnTransactionHandler();
+    private final List<Object> delivered = Collections.synchronizedList(new ArrayList<>());
+    private final CountDownLatch firstTaken = new CountDownLatch(1);
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @Test
+    public void blockIsTheDefaultAndLosesNothing() throws InterruptedException {
+        EventDispatcher dispatcher = dispatcher(DispatchConfig.config().bufferSize(2));
+        List<OnBlockParameters> blocks = blocks(10);
+
+        Thread publisher = new Thread(() -> blocks.forEach(dispatcher::publish));
+        publisher.start();
+        assertTrue(firstTaken.await(5, TimeUnit.SECONDS));
+        publisher.join(200);
+        assertTrue("the publisher waits for room", publisher.isAlive());
+
+        release.countDown();
+        publisher.join(5_000);
+        awaitDelivered(dispatcher, 10);
+        assertEquals(blocks, delivered);
+        assertEquals(0, dispatcher.getDroppedEvents());
+        assertEquals(0, dispatcher.getCoalescedBlocks());
+    }
+
+    @Test
+    public void coalescingSkipsToTheNewestBlock() throws InterruptedException {
+        EventDispatcher dispatcher = dispatcher(DispatchConfig.config().bufferSize(2).overflowPolicy(OverflowPolicy.COALESCE_BLOCKS));
+        List<OnBlockParameters> blocks = blocks(4);
+
+        dispatcher.publish(blocks.get(0));
+        assertTrue(firstTaken.await(5, TimeUnit.SECONDS));
+        blocks.subList(1, 4).forEach(dispatcher::publish);
+        release.countDown();
+
+        awaitDelivered(dispatcher, 2);
+        assertEquals(2, dispatcher.getCoalescedBlocks());
+        assertEquals(0, dispatcher.getDroppedEvents());
+        assertEquals(blocks.get(0), delivered.get(0));
+        assertEquals(blocks.get(3), delivered.get(1));
+    }
+
+    @Test
+    public void coalescingKeepsTheNewestBlockForATransaction() throws InterruptedException {
+        EventDispatcher dispatcher = dispatcher(DispatchConfig.config().bufferSize(2).overflowPolicy(OverflowPolicy.COALESCE_BLOCKS));
+        List<OnBlockParameters> blocks = blocks(3);
+        OnTransactionParameters tx = transaction();
+
+        dispatcher.publish(blocks.get(0));
+        assertTrue(firstTaken.await(5, TimeUnit.SECONDS));
+        dispatcher.publish(blocks.get(1));
+        dispatcher.publish(blocks.get(2));
+        dispatcher.publish(tx);
+        release.countDown();
+
+        awaitDelivered(dispatcher, 3);
+        assertEquals(1, dispatcher.getCoalescedBlocks());
+        assertEquals(blocks.get(2), delivered.get(1));
+        assertEquals(tx, delivered.get(2));
+    }
+
+    @Test
+    public void dropOldestDropsTheOldestQueuedEvent() throws InterruptedException {
+        EventDispatcher dispatcher = dispatcher(DispatchConfig.config().bufferSize(2).overflowPolicy(OverflowPolicy.DROP_OLDEST));
+        List<OnBlockParameters> blocks = blocks(4);
+
+        dispatcher.publish(blocks.get(0));
+        assertTrue(firstTaken.await(5, TimeUnit.SECONDS));
+        blocks.subList(1, 4).forEach(dispatcher::publish);
+        release.countDown();
+
+        awaitDelivered(dispatcher, 3);
+        assertEquals(1, dispatcher.getDroppedEvents());
+        assertEquals(0, dispatcher.getCoalescedBlocks());
+        assertEquals(blocks.get(0), delivered.get(0));
+        assertEquals(blocks.subList(2, 4), delivered.subList(1, 3));
+    }
+
+    // the subscriber holds the first event until released, so the next ones pile up in the buffer
+    private EventDispatcher dispatcher(DispatchConfig config) {
+        onBlockHandler.observable.subscribe(this::take);
+        onTransactionHandler.observable.subscribe(this::take);
+        return new EventDispatcher(onBlockHandler, onTransactionHandler, config);
+    }
+
+    private void take(Object event) {
+        delivered.add(event);
+        firstTaken.countDown();
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void awaitDelivered(EventDispatcher dispatcher, int count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (dispatcher.getDeliveredEvents() < count && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertEquals(count, dispatcher.getDeliveredEvents());
+    }
+
+    private static List<OnBlockParameters> blocks(int count) {
+        List<OnBlockParameters> blocks = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            blocks.add(new OnBlockParameters(mock(Block.class), Collections.emptyList()));
+        }
+        return blocks;
+    }
+
+    private static OnTransactionParameters transaction() {
+        return new OnTransactionParameters(mock(Transaction.class), null);
+    }
+}
@@ -0,0 +1,111 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.ethereum.values.EthAddress;
+import org.ethereum.core.Transaction;
+import org.ethereum.listener.EthereumListener;
+import org.junit.Test;
+import rx.Subscription;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class OnTransactionHandlerTest {
+    private final EthAddress alice = EthAddress.of("0x1111");
+    private final EthAddress bob = EthAddress.of("0x2222");
+    private final EthAddress carol = EthAddress.of("0x3333");
+    private final OnTransactionHandler handler = new OnTransactionHandler();
+
+    @Test
+    public void senderIsOnlyRecoveredForSenderSubscriptions() {
+        List<OnTransactionParameters> received = new ArrayList<>();
+        handler.observable(TransactionFilter.filter().to(bob)).subscribe(received::add);
+        Transaction tx = transaction(alice, bob);
+
+        handler.onTransaction(params(tx));
+
+        assertEquals(1, received.size());
+        verify(tx, never()).getSender();
+    }
+
+    @Test
+    public void nothingIsComputedWithoutIndexedSubscriptions() {
+        List<OnTransactionParameters> received = new ArrayList<>();
+        handler.observable.subscribe(received::add);
+        Transaction tx = transaction(alice, bob);
+
+        handler.onTransaction(params(tx));
+
+        assertEquals(1, received.size());
+        verify(tx, never()).getSender();
+        verify(tx, never()).getReceiveAddress();
+    }
+
+    @Test
+    public void transactionsOnlyReachTheSubscriptionsOfTheirAddresses() {
+        List<OnTransactionParameters> fromAlice = new ArrayList<>();
+        List<OnTransactionParameters> toCarol = new ArrayList<>();
+        List<OnTransactionParameters> pending = new ArrayList<>();
+        handler.observable(TransactionFilter.filter().from(alice)).subscribe(fromAlice::add);
+        handler.observable(TransactionFilter.filter().to(carol)).subscribe(toCarol::add);
+        handler.observable(TransactionFilter.filter().state(EthereumListener.PendingTransactionState.PENDING)).subscribe(pending::add);
+
+        OnTransactionParameters aliceToBob = params(transaction(alice, bob));
+        OnTransactionParameters bobToCarol = params(transaction(bob, carol));
+        handler.onTransaction(aliceToBob);
+        handler.onTransaction(bobToCarol);
+
+        assertEquals(Collections.singletonList(aliceToBob), fromAlice);
+        assertEquals(Collections.singletonList(bobToCarol), toCarol);
+        assertEquals(2, pending.size());
+    }
+
+    @Test
+    public void contractSubscriptionSeesTheCreationAndTheCalls() {
+        List<OnTransactionParameters> received = new ArrayList<>();
+        handler.observable(TransactionFilter.filter().contract(carol)).subscribe(received::add);
+        Transaction creation = transaction(alice, null);
+        when(creation.isContractCreation()).thenReturn(true);
+        when(creation.getContractAddress()).thenReturn(carol.address);
+
+        handler.onTransaction(params(creation));
+        handler.onTransaction(params(transaction(bob, carol)));
+        handler.onTransaction(params(transaction(bob, alice)));
+
+        assertEquals(2, received.size());
+    }
+
+    @Test
+    public void unsubscribedRoutesAreRemoved() {
+        List<OnTransactionParameters> received = new ArrayList<>();
+        Subscription subscription = handler.observable(TransactionFilter.filter().from(alice)).subscribe(received::add);
+        subscription.unsubscribe();
+        Transaction tx = transaction(alice, bob);
+
+        handler.onTransaction(params(tx));
+
+        assertTrue(received.isEmpty());
+        verify(tx, never()).getSender();
+    }
+
+    private static Transaction transaction(EthAddress from, EthAddress to) {
+        Transaction tx = mock(Transaction.class);
+        when(tx.getSender()).thenReturn(from.address);
+        when(tx.getReceiveAddress()).thenReturn(to == null ? null : to.address);
+        return tx;
+    }
+
+    private static OnTransactionParameters params(Transaction tx) {
+        return new OnTransactionParameters(tx, EthereumListener.PendingTransactionState.PENDING);
+    }
+}
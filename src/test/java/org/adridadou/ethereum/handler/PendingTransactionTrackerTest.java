@@ -0,0 +1,158 @@
+package org.adridadou.ethereum.handler;
+
+import org.adridadou.ethereum.values.EthData;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.listener.EthereumListener.PendingTransactionState;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import static org.ethereum.listener.EthereumListener.PendingTransactionState.DROPPED;
+import static org.ethereum.listener.EthereumListener.PendingTransactionState.INCLUDED;
+import static org.ethereum.listener.EthereumListener.PendingTransactionState.NEW_PENDING;
+import static org.ethereum.listener.EthereumListener.PendingTransactionState.PENDING;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class PendingTransactionTrackerTest {
+    private final OnBlockHandler onBlockHandler = new OnBlockHandler();
+    private final OnTransactionHandler onTransactionHandler = new OnTransactionHandler();
+    private final EthereumEventHandler events = new EthereumEventHandler(0, onBlockHandler, onTransactionHandler);
+    private final List<String> changes = new ArrayList<>();
+
+    @Test
+    public void pendingThenIncludedIsPublishedOncePerState() {
+        PendingTransactionTracker tracker = tracker(100, 2);
+        Transaction tx = transaction(1);
+
+        report(tx, NEW_PENDING);
+        report(tx, PENDING);
+        report(tx, PENDING);
+        assertEquals(Optional.of(PENDING), tracker.getState(hash(1)));
+        report(tx, INCLUDED);
+        report(tx, INCLUDED);
+
+        assertEquals(Optional.of(INCLUDED), tracker.getState(hash(1)));
+        assertEquals(Arrays.asList("1 NEW_PENDING", "1 PENDING", "1 INCLUDED"), changes);
+    }
+
+    @Test
+    public void pendingThenDroppedIsPublished() {
+        PendingTransactionTracker tracker = tracker(100, 2);
+        Transaction tx = transaction(1);
+
+        report(tx, PENDING);
+        report(tx, DROPPED);
+
+        assertEquals(Optional.of(DROPPED), tracker.getState(hash(1)));
+        assertEquals(Arrays.asList("1 PENDING", "1 DROPPED"), changes);
+    }
+
+    @Test
+    public void settledTransactionsAreForgottenAfterTheConfirmations() {
+        PendingTransactionTracker tracker = tracker(100, 2);
+        report(transaction(1), INCLUDED);
+        report(transaction(2), DROPPED);
+        report(transaction(3), PENDING);
+
+        block(1);
+        assertEquals(3, tracker.size());
+        block(2);
+
+        assertEquals(Optional.empty(), tracker.getState(hash(1)));
+        assertEquals(Optional.empty(), tracker.getState(hash(2)));
+        assertEquals(Optional.of(PENDING), tracker.getState(hash(3)));
+    }
+
+    @Test
+    public void transactionPendingAgainAfterAReorgIsKept() {
+        PendingTransactionTracker tracker = tracker(100, 2);
+        Transaction tx = transaction(1);
+        report(tx, INCLUDED);
+        report(tx, PENDING);
+
+        block(2);
+
+        assertEquals(Optional.of(PENDING), tracker.getState(hash(1)));
+    }
+
+    @Test
+    public void transactionIncludedAgainAfterAReorgIsForgottenOnceConfirmed() {
+        PendingTransactionTracker tracker = tracker(100, 2);
+        Transaction tx = transaction(1);
+        report(tx, INCLUDED);
+        report(tx, PENDING);
+        block(1);
+        report(tx, INCLUDED);
+
+        block(2);
+        assertEquals(Optional.of(INCLUDED), tracker.getState(hash(1)));
+        block(3);
+
+        assertEquals(Optional.empty(), tracker.getState(hash(1)));
+    }
+
+    @Test
+    public void closedTrackerStopsFollowingTheEvents() {
+        PendingTransactionTracker tracker = tracker(100, 2);
+        report(transaction(1), INCLUDED);
+
+        tracker.close();
+        report(transaction(2), PENDING);
+        block(2);
+
+        assertEquals(Optional.of(INCLUDED), tracker.getState(hash(1)));
+        assertEquals(Optional.empty(), tracker.getState(hash(2)));
+        assertEquals(Collections.singletonList("1 INCLUDED"), changes);
+    }
+
+    @Test
+    public void oldestTransactionsAreEvictedBeyondTheLimit() {
+        PendingTransactionTracker tracker = tracker(2, 2);
+        report(transaction(1), PENDING);
+        report(transaction(2), PENDING);
+        report(transaction(3), PENDING);
+
+        assertEquals(2, tracker.size());
+        assertEquals(Optional.empty(), tracker.getState(hash(1)));
+    }
+
+    private PendingTransactionTracker tracker(int maxTransactions, int confirmations) {
+        PendingTransactionTracker tracker = new PendingTransactionTracker(events, maxTransactions, confirmations);
+        tracker.observeChanges().subscribe(params -> changes.add(params.transaction.getHash()[0] + " " + params.state));
+        return tracker;
+    }
+
+    // handed to the handlers directly, the dispatcher thread is not needed for the tracker
+    private void report(Transaction tx, PendingTransactionState state) {
+        onTransactionHandler.onTransaction(new OnTransactionParameters(tx, state));
+    }
+
+    private void block(long number) {
+        Block block = mock(Block.class);
+        when(block.getNumber()).thenReturn(number);
+        events.getChainHead().update(number);
+        onBlockHandler.newBlock(new OnBlockParameters(block, Collections.emptyList()));
+    }
+
+    private static Transaction transaction(int id) {
+        Transaction tx = mock(Transaction.class);
+        when(tx.getHash()).thenReturn(hash(id).data);
+        return tx;
+    }
+
+    private static EthData hash(int id) {
+        byte[] hash = new byte[32];
+        hash[0] = (byte) id;
+        return EthData.of(hash);
+    }
+}
@@ -0,0 +1,109 @@
+package org.adridadou.ethereum.rpc;
+
+import org.junit.Test;
+import org.web3j.protocol.Web3jService;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.Response;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class AdmissionControlServiceTest {
+    private final HeldService node = new HeldService();
+
+    @Test
+    public void queuedRequestsAnsweredInlineAreDrainedWithoutRecursion() {
+        AdmissionControlService service = new AdmissionControlService(node, AdmissionConfig.config().maxInFlight(1).maxQueued(20_000));
+        node.hold = true;
+        CompletableFuture<Response> first = send(service, "eth_call");
+        node.hold = false;
+
+        List<CompletableFuture<Response>> queued = new ArrayList<>();
+        for (int i = 0; i < 20_000; i++) {
+            queued.add(send(service, "eth_call"));
+        }
+        assertEquals(20_000, service.getQueueDepth(Priority.READ));
+
+        node.release();
+        first.join();
+        queued.forEach(CompletableFuture::join);
+        assertEquals(0, service.getInFlight());
+        assertEquals(0, service.getQueueDepth(Priority.READ));
+    }
+
+    @Test
+    public void sendsAreAdmittedBeforeTrackingAndReads() {
+        AdmissionControlService service = new AdmissionControlService(node, AdmissionConfig.config().maxInFlight(1));
+        node.hold = true;
+        send(service, "eth_call");
+        node.hold = false;
+
+        send(service, "eth_call");
+        send(service, "eth_getTransactionReceipt");
+        send(service, "eth_sendRawTransaction");
+        node.release();
+
+        assertEquals(Arrays.asList("eth_call", "eth_sendRawTransaction", "eth_getTransactionReceipt", "eth_call"), node.methods);
+    }
+
+    @Test
+    public void requestsBeyondTheQueueLimitAreRejected() throws InterruptedException {
+        AdmissionControlService service = new AdmissionControlService(node, AdmissionConfig.config().maxInFlight(1).maxQueued(1));
+        node.hold = true;
+        send(service, "eth_call");
+        send(service, "eth_call");
+
+        try {
+            send(service, "eth_call").get();
+            fail("the queue is full");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof IOException);
+        }
+    }
+
+    private static CompletableFuture<Response> send(AdmissionControlService service, String method) {
+        return service.sendAsync(new Request<>(method, Collections.emptyList(), 1, service, Response.class), Response.class);
+    }
+
+    // answers right away, or holds the answers until released
+    private static class HeldService implements Web3jService {
+        private final List<String> methods = new ArrayList<>();
+        private final List<CompletableFuture<?>> held = new ArrayList<>();
+        private boolean hold;
+
+        @Override
+        public <T extends Response> T send(Request request, Class<T> responseType) throws IOException {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public <T extends Response> CompletableFuture<T> sendAsync(Request request, Class<T> responseType) {
+            methods.add(request.getMethod());
+            CompletableFuture<T> result = new CompletableFuture<>();
+            if (hold) {
+                held.add(result);
+            } else {
+                result.complete(null);
+            }
+            return result;
+        }
+
+        private void release() {
+            List<CompletableFuture<?>> released = new ArrayList<>(held);
+            held.clear();
+            released.forEach(future -> future.complete(null));
+        }
+    }
+}
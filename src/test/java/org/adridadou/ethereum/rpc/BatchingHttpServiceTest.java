@@ -0,0 +1,74 @@
+package org.adridadou.ethereum.rpc;
+
+import org.adridadou.ethereum.blockchain.LocalRpcNode;
+import org.adridadou.ethereum.values.EthAccount;
+import org.adridadou.ethereum.values.EthValue;
+import org.ethereum.crypto.ECKey;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.web3j.protocol.core.Request;
+import org.web3j.protocol.core.methods.response.EthGetBalance;
+
+import java.io.IOException;
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class BatchingHttpServiceTest {
+    private final List<EthAccount> accounts = new ArrayList<>();
+    private final LocalRpcNode node = new LocalRpcNode();
+    private BatchingHttpService service;
+
+    @Before
+    public void before() throws IOException {
+        for (int i = 1; i <= 5; i++) {
+            EthAccount account = new EthAccount(ECKey.fromPrivate(BigInteger.valueOf(i)));
+            accounts.add(account);
+            node.initialBalance(account, EthValue.wei(i * 1000));
+        }
+        service = new BatchingHttpService(node.start());
+    }
+
+    @After
+    public void after() throws IOException {
+        service.close();
+        node.stop();
+    }
+
+    @Test
+    public void everyCallOfABatchGetsItsOwnResponse() {
+        RpcBatch batch = service.batch();
+        List<CompletableFuture<EthGetBalance>> balances = new ArrayList<>();
+        for (EthAccount account : accounts) {
+            // same id for all of them, as web3j does
+            balances.add(batch.add(new Request<>("eth_getBalance", Arrays.asList(account.getAddress().withLeading0x(), "latest"), 1, service, EthGetBalance.class), EthGetBalance.class));
+        }
+        batch.send();
+
+        for (int i = 0; i < balances.size(); i++) {
+            EthGetBalance balance = balances.get(i).join();
+            assertEquals(BigInteger.valueOf((i + 1) * 1000), balance.getBalance());
+            assertEquals(1, balance.getId());
+        }
+    }
+
+    @Test
+    public void callsOfTheSameWindowGetTheirOwnResponse() {
+        List<CompletableFuture<EthGetBalance>> balances = new ArrayList<>();
+        for (EthAccount account : accounts) {
+            balances.add(service.sendAsync(new Request<>("eth_getBalance", Arrays.asList(account.getAddress().withLeading0x(), "latest"), 1, service, EthGetBalance.class), EthGetBalance.class));
+        }
+
+        for (int i = 0; i < balances.size(); i++) {
+            assertEquals(BigInteger.valueOf((i + 1) * 1000), balances.get(i).join().getBalance());
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package org.adridadou.ethereum.smartcontract;
+
+import org.adridadou.ethereum.values.EthAddress;
+import org.adridadou.ethereum.values.EthData;
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * This code is released under Apache 2 license
+ */
+public class ConstantCallCacheTest {
+    private final EthAddress address = EthAddress.of("0x3939393848");
+    private final EthAddress sender = EthAddress.of("0x1234");
+    private final EthData data = EthData.of("0x01020304");
+    private final AtomicInteger executions = new AtomicInteger();
+
+    @Test
+    public void sameCallOnSameBlockIsExecutedOnce() {
+        ConstantCallCache cache = new ConstantCallCache(10, 10_000);
+
+        assertEquals(EthData.of("0x2a"), cache.get("block1", address, sender, data, this::execute));
+        assertEquals(EthData.of("0x2a"), cache.get("block1", address, sender, data, this::execute));
+        assertEquals(1, executions.get());
+
+        cache.get("block1", address, EthAddress.of("0x5678"), data, this::execute);
+        cache.get("block2", address, sender, data, this::execute);
+        assertEquals(3, executions.get());
+    }
+
+    @Test
+    public void newBlockFlushesThePreviousHead() {
+        ConstantCallCache cache = new ConstantCallCache(10, 10_000);
+        cache.onBlock("block1");
+        cache.get("block1", address, sender, data, this::execute);
+        cache.get("block0", address, sender, data, this::execute);
+
+        cache.onBlock("block2");
+
+        assertEquals(1, cache.size());
+        cache.get("block1", address, sender, data, this::execute);
+        assertEquals(3, executions.get());
+    }
+
+    @Test
+    public void cacheIsBoundedByEntriesAndBytes() {
+        ConstantCallCache byEntries = new ConstantCallCache(2, 10_000);
+        for (int i = 0; i < 5; i++) {
+            byEntries.get("block" + i, address, sender, data, this::execute);
+        }
+        assertEquals(2, byEntries.size());
+
+        ConstantCallCache byBytes = new ConstantCallCache(100, 300);
+        for (int i = 0; i < 5; i++) {
+            byBytes.get("block" + i, address, sender, data, this::execute);
+        }
+        assertEquals(2, byBytes.size());
+        assertEquals(2 * (128 + 4 + 1), byBytes.sizeInBytes());
+    }
+
+    @Test
+    public void concurrentAsyncCallsShareTheInFlightCall() {
+        ConstantCallCache cache = new ConstantCallCache(10, 10_000);
+        CompletableFuture<EthData> call = new CompletableFuture<>();
+
+        CompletableFuture<EthData> first = cache.getAsync("block1", address, sender, data, () -> executeAsync(call));
+        CompletableFuture<EthData> second = cache.getAsync("block1", address, sender, data, () -> executeAsync(call));
+        assertFalse(first.isDone());
+
+        call.complete(EthData.of("0x2a"));
+        assertEquals(EthData.of("0x2a"), first.join());
+        assertEquals(EthData.of("0x2a"), second.join());
+        assertEquals(EthData.of("0x2a"), cache.getAsync("block1", address, sender, data, () -> executeAsync(call)).join());
+        assertEquals(1, executions.get());
+    }
+
+    @Test
+    public void failedAsyncCallIsNotCached() {
+        ConstantCallCache cache = new ConstantCallCache(10, 10_000);
+        CompletableFuture<EthData> failure = new CompletableFuture<>();
+        failure.completeExceptionally(new RuntimeException("node down"));
+
+        assertTrue(cache.getAsync("block1", address, sender, data, () -> executeAsync(failure)).isCompletedExceptionally());
+        assertEquals(0, cache.size());
+        assertEquals(EthData.of("0x2a"), cache.getAsync("block1", address, sender, data, () -> CompletableFuture.completedFuture(execute())).join());
+        assertEquals(1, cache.size());
+    }
+
+    private CompletableFuture<EthData> executeAsync(CompletableFuture<EthData> result) {
+        executions.incrementAndGet();
+        return result;
+    }
+
+    private EthData execute() {
+        executions.incrementAndGet();
+        return EthData.of("0x2a");
+    }
+}